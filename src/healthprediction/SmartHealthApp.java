@@ -8,13 +8,17 @@ import javax.swing.UIManager;
 
 public class SmartHealthApp {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--verify-query-plans")) {
+            System.exit(verifyQueryPlans() ? 0 : 1);
+        }
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 
-            DatabaseService.getInstance().initializeDatabase();
-
+            // Models load in the background while the database and window come up.
             MLModelService.getInstance().loadModels();
 
+            DatabaseService.getInstance().initializeDatabase();
+
             SwingUtilities.invokeLater(() -> {
                 new HealthPredictionGUI().setVisible(true);
             });
@@ -24,4 +28,18 @@ public class SmartHealthApp {
             e.printStackTrace();
         }
     }
+
+    // Diagnostic run: fails when a hot query would scan or sort instead of using an index.
+    private static boolean verifyQueryPlans() {
+        DatabaseService db = DatabaseService.getInstance();
+        db.initializeDatabase();
+        try {
+            db.verifyQueryPlans();
+            System.out.println("All hot queries use an index.");
+            return true;
+        } catch (Exception e) {
+            System.err.println("Query plan check failed: " + e.getMessage());
+            return false;
+        }
+    }
 }
\ No newline at end of file
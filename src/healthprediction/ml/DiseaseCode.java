@@ -0,0 +1,47 @@
+package com.healthprediction.ml;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A disease risk {@link DiseasePredictor} can report. A patient's codes are passed around
+ * as a bit mask, one bit per code by ordinal, so scoring a patient allocates no set.
+ */
+public enum DiseaseCode {
+    HYPERTENSION_HEART_DISEASE("Hypertension/Heart Disease Risk"),
+    PRE_HYPERTENSION("Pre-hypertension/Elevated Cholesterol"),
+    DIABETES_TYPE_2("Diabetes Mellitus Type 2 (High Sugar)"),
+    PRE_DIABETES("Pre-diabetes"),
+    RESPIRATORY_INFECTION("Respiratory Infection (e.g., Flu/Common Cold)"),
+    GENERAL_INFECTION("Possible General Infection"),
+    SEASONAL_ALLERGIES("Seasonal Allergies"),
+    VITAMIN_D_DEFICIENCY("Vitamin D Deficiency");
+
+    private static final DiseaseCode[] VALUES = values();
+
+    private final String description;
+
+    DiseaseCode(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() { return description; }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public boolean in(int mask) {
+        return (mask & bit()) != 0;
+    }
+
+    public static Set<DiseaseCode> fromMask(int mask) {
+        Set<DiseaseCode> codes = EnumSet.noneOf(DiseaseCode.class);
+        for (DiseaseCode code : VALUES) {
+            if (code.in(mask)) {
+                codes.add(code);
+            }
+        }
+        return codes;
+    }
+}
\ No newline at end of file
@@ -5,13 +5,12 @@ import com.healthprediction.model.Patient;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class DiseasePredictor {
 
     
     private boolean modelLoaded = false;
-    private Random random = new Random();
 
     public DiseasePredictor() {
         
@@ -45,60 +44,50 @@ public class DiseasePredictor {
             return predictedDiseases;
         }
 
-        
-
-        
-        if ((latestRecord.getSystolicBP() > 140 && latestRecord.getDiastolicBP() > 90) ||
-            latestRecord.getCholesterol() > 240) {
-            predictedDiseases.add("Hypertension/Heart Disease Risk");
-        } else if (latestRecord.getSystolicBP() > 130 || latestRecord.getDiastolicBP() > 85) {
-            predictedDiseases.add("Pre-hypertension/Elevated Cholesterol");
+        for (DiseaseCode code : DiseaseCode.fromMask(predictDiseaseCodes(patient, latestRecord))) {
+            predictedDiseases.add(code.getDescription());
         }
 
-        
-        if (latestRecord.getBloodSugar() > 125) {
-            predictedDiseases.add("Diabetes Mellitus Type 2 (High Sugar)");
-        } else if (latestRecord.getBloodSugar() > 100) {
-            predictedDiseases.add("Pre-diabetes");
+        if (predictedDiseases.isEmpty()) {
+            predictedDiseases.add("No specific disease risk predicted based on current data.");
         }
 
-        
-        if (latestRecord.getTemperature() > 38.0 && latestRecord.getSymptoms() != null &&
-            latestRecord.getSymptoms().toLowerCase().contains("cough")) {
-            predictedDiseases.add("Respiratory Infection (e.g., Flu/Common Cold)");
-        }
+        return predictedDiseases;
+    }
 
-        
-        if (latestRecord.getTemperature() > 37.8 && !predictedDiseases.contains("Respiratory Infection (e.g., Flu/Common Cold)")) {
-             predictedDiseases.add("Possible General Infection");
+    /**
+     * Same rules as {@link #predictDiseases}, as a mask of {@link DiseaseCode} bits; 0 when
+     * no disease is predicted.
+     */
+    public int predictDiseaseCodes(Patient patient, HealthRecord latestRecord) throws IllegalStateException {
+        return predictDiseaseCodes(PredictionRules.current(), Feature.extract(patient, latestRecord));
+    }
+
+    /**
+     * {@link #predictDiseaseCodes(Patient, HealthRecord)} from an already extracted {@link Feature}
+     * vector, under the given rules.
+     */
+    public int predictDiseaseCodes(PredictionRules rules, double[] features) throws IllegalStateException {
+        if (!modelLoaded) {
+            throw new IllegalStateException("DiseasePredictor model not loaded. Call loadModel() first.");
         }
 
+        int codes = rules.diseaseCodes(features);
 
         
-        if (random.nextDouble() < 0.1) { 
-            predictedDiseases.add("Seasonal Allergies");
-        }
-        if (random.nextDouble() < 0.05) { 
-            predictedDiseases.add("Vitamin D Deficiency");
+        if (ThreadLocalRandom.current().nextDouble() < 0.1) { 
+            codes |= DiseaseCode.SEASONAL_ALLERGIES.bit();
         }
-
-        if (predictedDiseases.isEmpty()) {
-            predictedDiseases.add("No specific disease risk predicted based on current data.");
+        if (ThreadLocalRandom.current().nextDouble() < 0.05) { 
+            codes |= DiseaseCode.VITAMIN_D_DEFICIENCY.bit();
         }
 
-        return predictedDiseases;
+        return codes;
     }
 
     public void retrainModel(java.util.List<HealthRecord> trainingData, java.util.List<Patient> patientsData) {
-        
-        
-        
-        System.out.println("Retraining DiseasePredictor model with " + trainingData.size() + " health records...");
-        try {
-            Thread.sleep(3000); 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        System.out.println("DiseasePredictor model retraining complete.");
+        // The thresholds are the rule table's, which is edited and reloaded rather than fitted.
+        System.out.println("DiseasePredictor has no weights to fit to " + trainingData.size()
+                           + " health records; its thresholds come from " + PredictionRules.current().getSource());
     }
 }
\ No newline at end of file
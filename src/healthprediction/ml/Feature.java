@@ -0,0 +1,80 @@
+package com.healthprediction.ml;
+
+import com.healthprediction.model.HealthRecord;
+import com.healthprediction.model.Patient;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * One input of the {@link PredictionRules}, read from a patient and their health record
+ * into a slot of a primitive feature vector. Flags are 1 or 0; a value that is unknown
+ * (e.g. the age of a patient without a date of birth) is NaN, which no threshold matches.
+ */
+public enum Feature {
+    HEART_RATE,
+    SYSTOLIC_BP,
+    DIASTOLIC_BP,
+    BLOOD_SUGAR,
+    CHOLESTEROL,
+    TEMPERATURE,
+    STRESS_LEVEL,
+    AGE,
+    SMOKER,
+    NO_EXERCISE,
+    HAS_ALLERGIES,
+    ON_MEDICATION,
+    COUGH;
+
+    public static final int COUNT = values().length;
+
+    /** The name used in rule files, e.g. {@code heart_rate}. */
+    public String getRuleName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /** A new feature vector for the record with the patient's age today; {@code patient} may be null. */
+    public static double[] extract(Patient patient, HealthRecord record) {
+        return extract(patient, record, LocalDate.now());
+    }
+
+    /** Like {@link #extract(Patient, HealthRecord)}, with the patient's age on {@code asOf}. */
+    public static double[] extract(Patient patient, HealthRecord record, LocalDate asOf) {
+        double[] features = new double[COUNT];
+        features[HEART_RATE.ordinal()] = record.getHeartRate();
+        features[SYSTOLIC_BP.ordinal()] = record.getSystolicBP();
+        features[DIASTOLIC_BP.ordinal()] = record.getDiastolicBP();
+        features[BLOOD_SUGAR.ordinal()] = record.getBloodSugar();
+        features[CHOLESTEROL.ordinal()] = record.getCholesterol();
+        features[TEMPERATURE.ordinal()] = record.getTemperature();
+        features[STRESS_LEVEL.ordinal()] = record.getStressLevel();
+        features[SMOKER.ordinal()] = flag("Current".equalsIgnoreCase(record.getSmokingStatus()));
+        features[NO_EXERCISE.ordinal()] = flag("None".equalsIgnoreCase(record.getExerciseFrequency()));
+        features[COUGH.ordinal()] = flag(containsIgnoreCase(record.getSymptoms(), "cough"));
+        if (patient != null && patient.getDateOfBirth() != null) {
+            features[AGE.ordinal()] = ChronoUnit.YEARS.between(patient.getDateOfBirth(), asOf);
+        } else {
+            features[AGE.ordinal()] = Double.NaN;
+        }
+        features[HAS_ALLERGIES.ordinal()] = flag(patient != null && patient.getAllergies() != null && !patient.getAllergies().isEmpty());
+        features[ON_MEDICATION.ordinal()] = flag(patient != null && patient.getMedications() != null && !patient.getMedications().isEmpty());
+        return features;
+    }
+
+    private static double flag(boolean value) {
+        return value ? 1.0 : 0.0;
+    }
+
+    private static boolean containsIgnoreCase(String text, String word) {
+        if (text == null) {
+            return false;
+        }
+        for (int i = 0; i + word.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, word, 0, word.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
\ No newline at end of file
@@ -3,13 +3,26 @@ package com.healthprediction.ml;
 import com.healthprediction.model.HealthRecord;
 import com.healthprediction.model.Patient;
 
-import java.time.LocalDate;
-import java.util.Random;
-
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Risk and health scores come from the {@link PredictionRules} and follow their reloads;
+ * risk tiers and recommendations are defined on that scale. A model trained with
+ * {@link #retrainModel} does not override them: it adds a separate probability that a
+ * diagnosis is recorded, and is kept in {@code healthprediction.ml.riskModelFile}
+ * (default {@code risk_model.csv}) so that it survives a restart.
+ */
 public class HealthRiskPredictor {
 
-    
+    private static final Path MODEL_FILE = Path.of(System.getProperty("healthprediction.ml.riskModelFile", "risk_model.csv"));
+    private static final double L2 = Double.parseDouble(System.getProperty("healthprediction.ml.riskModel.l2", "1e-4"));
+    private static final int MAX_ITERATIONS = Integer.getInteger("healthprediction.ml.riskModel.maxIterations", 100);
+
     private boolean modelLoaded = false;
+    private volatile LogisticRegression trainedModel;
 
     public HealthRiskPredictor() {
         
@@ -22,6 +35,15 @@ public class HealthRiskPredictor {
         System.out.println("Loading HealthRiskPredictor model...");
         
         Thread.sleep(500);
+        System.out.println("Using " + PredictionRules.current());
+        if (Files.exists(MODEL_FILE)) {
+            try {
+                trainedModel = LogisticRegression.load(MODEL_FILE);
+                System.out.println("Loaded trained model " + trainedModel + " from " + MODEL_FILE);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Ignoring trained model in " + MODEL_FILE + ": " + e.getMessage());
+            }
+        }
         modelLoaded = true;
         System.out.println("HealthRiskPredictor model loaded.");
     }
@@ -35,67 +57,40 @@ public class HealthRiskPredictor {
             return "No health data available for prediction.";
         }
 
-        
-        
-        
-
-        double riskScore = 0.0;
-
-        
-        if (latestRecord.getHeartRate() > 100 || latestRecord.getHeartRate() < 60) {
-            riskScore += 0.2; 
-        }
-        if (latestRecord.getSystolicBP() > 140 || latestRecord.getDiastolicBP() > 90) {
-            riskScore += 0.3; 
-        }
-        if (latestRecord.getBloodSugar() > 120) {
-            riskScore += 0.25; 
-        }
-        if (latestRecord.getCholesterol() > 200) {
-            riskScore += 0.2; 
-        }
-        if ("Current".equalsIgnoreCase(latestRecord.getSmokingStatus())) {
-            riskScore += 0.3; 
-        }
-        if ("None".equalsIgnoreCase(latestRecord.getExerciseFrequency())) {
-            riskScore += 0.15; 
-        }
-        if (latestRecord.getStressLevel() > 7) {
-            riskScore += 0.1; 
-        }
-        if (latestRecord.getTemperature() > 37.5) { 
-            riskScore += 0.05;
-        }
+        double riskScore = riskScore(patient, latestRecord);
+        RiskTier tier = RiskTier.of(riskScore);
+        return tier.getLabel() + " (Score: " + String.format("%.2f", riskScore) + ") - " + tier.getAdvice();
+    }
 
-        
-        if (patient.getDateOfBirth() != null) {
-            int age = java.time.Period.between(patient.getDateOfBirth(), LocalDate.now()).getYears();
-            if (age >= 60) {
-                riskScore += 0.2; 
-            } else if (age >= 40) {
-                riskScore += 0.1; 
-            }
-        }
+    /**
+     * The patient's risk score between 0 and 1; {@link RiskTier#of(double)} gives its tier.
+     * Unlike {@link #predictRisk}, builds no text.
+     */
+    public double riskScore(Patient patient, HealthRecord latestRecord) throws IllegalStateException {
+        return riskScore(PredictionRules.current(), Feature.extract(patient, latestRecord));
+    }
 
-        if (patient.getAllergies() != null && !patient.getAllergies().isEmpty()) {
-             riskScore += 0.05; 
-        }
-        if (patient.getMedications() != null && !patient.getMedications().isEmpty()) {
-            
-            riskScore += 0.1;
+    /**
+     * {@link #riskScore(Patient, HealthRecord)} from an already extracted {@link Feature} vector,
+     * under the given rules rather than whichever are current when it runs.
+     */
+    public double riskScore(PredictionRules rules, double[] features) throws IllegalStateException {
+        if (!modelLoaded) {
+            throw new IllegalStateException("HealthRiskPredictor model not loaded. Call loadModel() first.");
         }
+        return rules.riskScore(features);
+    }
 
-        
-        riskScore = Math.min(1.0, riskScore);
-
-        
-        if (riskScore > 0.7) {
-            return "High Risk (Score: " + String.format("%.2f", riskScore) + ") - Immediate medical attention advised.";
-        } else if (riskScore > 0.4) {
-            return "Moderate Risk (Score: " + String.format("%.2f", riskScore) + ") - Consult a doctor soon for evaluation.";
-        } else {
-            return "Low Risk (Score: " + String.format("%.2f", riskScore) + ") - Maintain healthy lifestyle, routine check-up recommended.";
+    /**
+     * Probability from the trained model that a diagnosis is recorded for a patient with
+     * these features, or NaN if no model has been trained.
+     */
+    public double diagnosisProbability(double[] features) throws IllegalStateException {
+        if (!modelLoaded) {
+            throw new IllegalStateException("HealthRiskPredictor model not loaded. Call loadModel() first.");
         }
+        LogisticRegression model = trainedModel;
+        return model != null ? model.probability(features) : Double.NaN;
     }
 
     public double getHealthScore(HealthRecord latestRecord) throws IllegalStateException {
@@ -105,38 +100,47 @@ public class HealthRiskPredictor {
         if (latestRecord == null) {
             return 0.0; 
         }
+        return getHealthScore(PredictionRules.current(), Feature.extract(null, latestRecord));
+    }
 
-        
-        
-        
-        double score = 100.0;
-
-        if (latestRecord.getHeartRate() > 90 || latestRecord.getHeartRate() < 70) score -= 10;
-        if (latestRecord.getSystolicBP() > 130 || latestRecord.getDiastolicBP() > 85) score -= 15;
-        if (latestRecord.getBloodSugar() > 100) score -= 15;
-        if (latestRecord.getCholesterol() > 180) score -= 10;
-        if ("Current".equalsIgnoreCase(latestRecord.getSmokingStatus())) score -= 25;
-        if ("None".equalsIgnoreCase(latestRecord.getExerciseFrequency())) score -= 10;
-        if (latestRecord.getStressLevel() > 5) score -= (latestRecord.getStressLevel() - 5) * 2; 
-
-        return Math.max(0, Math.min(100, score)); 
+    /** {@link #getHealthScore(HealthRecord)} from an already extracted {@link Feature} vector, under the given rules. */
+    public double getHealthScore(PredictionRules rules, double[] features) throws IllegalStateException {
+        if (!modelLoaded) {
+            throw new IllegalStateException("HealthRiskPredictor model not loaded. Call loadModel() first.");
+        }
+        return rules.healthScore(features);
     }
 
-    public void retrainModel(java.util.List<HealthRecord> trainingData) {
-        
-        
-        
-        
-        System.out.println("Retraining HealthRiskPredictor model with " + trainingData.size() + " records...");
-        
+    /**
+     * Fits a logistic regression to the training set on {@code pool}, uses it for
+     * {@link #diagnosisProbability} from then on and saves it to the model file.
+     * {@code healthprediction.ml.riskModel.l2} (default 1e-4) sets the L2 penalty and
+     * {@code healthprediction.ml.riskModel.maxIterations} (default 100) bounds the fit.
+     *
+     * @throws IllegalArgumentException if the set does not have both positive and negative rows
+     */
+    public LogisticRegression retrainModel(TrainingSet trainingSet, ForkJoinPool pool) {
+        int positives = trainingSet.getPositives();
+        if (positives == 0 || positives == trainingSet.getRows()) {
+            throw new IllegalArgumentException("Training needs records with and without a diagnosis; got "
+                                               + positives + " of " + trainingSet.getRows() + " with one");
+        }
+        System.out.println("Retraining HealthRiskPredictor model with " + trainingSet.getRows() + " records...");
+        long start = System.nanoTime();
+        LogisticRegression model = LogisticRegression.fit(trainingSet, L2, MAX_ITERATIONS, pool);
+        trainedModel = model;
+        System.out.println("HealthRiskPredictor model retraining complete: " + model + " in "
+                           + (System.nanoTime() - start) / 1_000_000 + " ms");
         try {
-            Thread.sleep(2000); 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            model.save(MODEL_FILE);
+        } catch (IOException e) {
+            System.err.println("Could not save trained model to " + MODEL_FILE + ", it will be lost on restart: " + e.getMessage());
         }
-        System.out.println("HealthRiskPredictor model retraining complete.");
-        
-        
-        
+        return model;
+    }
+
+    /** The trained model in use, or null if none has been trained. */
+    public LogisticRegression getTrainedModel() {
+        return trainedModel;
     }
 }
\ No newline at end of file
@@ -0,0 +1,424 @@
+package com.healthprediction.ml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Logistic regression over {@link Feature} vectors, fitted with L-BFGS to minimise the
+ * mean log loss plus an L2 penalty on the weights (not the intercept). Features are
+ * standardised with the training set's mean and standard deviation, and a missing (NaN)
+ * value counts as the mean. Each pass over the data for the loss and gradient is split
+ * across a ForkJoin pool; a fit takes a few dozen such passes.
+ */
+public final class LogisticRegression {
+    private static final int HISTORY = 10;
+    private static final int MIN_TASK_ROWS = 4096;
+    private static final int MAX_LINE_SEARCH_STEPS = 30;
+    private static final double GRADIENT_TOLERANCE = 1e-6;
+    private static final double LOSS_TOLERANCE = 1e-10;
+
+    private final double[] means;
+    // 1 / standard deviation of each feature.
+    private final double[] scales;
+    private final double[] weights;
+    private final double intercept;
+    private final int rows;
+    private final int iterations;
+    private final double loss;
+
+    private LogisticRegression(double[] means, double[] scales, double[] theta, int rows, int iterations, double loss) {
+        this.means = means;
+        this.scales = scales;
+        this.weights = Arrays.copyOf(theta, means.length);
+        this.intercept = theta[means.length];
+        this.rows = rows;
+        this.iterations = iterations;
+        this.loss = loss;
+    }
+
+    /** Probability of the positive class for a {@link Feature} vector. */
+    public double probability(double[] features) {
+        double z = intercept;
+        for (int j = 0; j < weights.length; j++) {
+            z += weights[j] * standardize(features[j], j);
+        }
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    /** Share of the rows whose label the model gets right at a 0.5 cut-off. */
+    public double accuracy(TrainingSet data) {
+        double[] x = data.features();
+        double[] y = data.labels();
+        double[] row = new double[data.getColumns()];
+        int correct = 0;
+        for (int r = 0; r < data.getRows(); r++) {
+            System.arraycopy(x, r * row.length, row, 0, row.length);
+            correct += (probability(row) >= 0.5) == (y[r] == 1.0) ? 1 : 0;
+        }
+        return data.getRows() == 0 ? 0.0 : (double) correct / data.getRows();
+    }
+
+    /** Weight of a feature per standard deviation. */
+    public double getWeight(Feature feature) {
+        return weights[feature.ordinal()];
+    }
+
+    public int getRows() { return rows; }
+
+    public int getIterations() { return iterations; }
+
+    /** Regularised mean log loss on the training set. */
+    public double getLoss() { return loss; }
+
+    @Override
+    public String toString() {
+        return String.format("LogisticRegression{rows=%d, iterations=%d, loss=%.5f}", rows, iterations, loss);
+    }
+
+    /**
+     * Writes the model as text: {@code rows}, {@code iterations}, {@code loss} and
+     * {@code intercept} lines of name and value, then one
+     * {@code feature,mean,scale,weight} line per {@link Feature}. The file is replaced
+     * atomically, so a reader never sees half a model.
+     */
+    public void save(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# " + this);
+        lines.add("rows," + rows);
+        lines.add("iterations," + iterations);
+        lines.add("loss," + loss);
+        lines.add("intercept," + intercept);
+        for (Feature feature : Feature.values()) {
+            int j = feature.ordinal();
+            lines.add(feature.getRuleName() + "," + means[j] + "," + scales[j] + "," + weights[j]);
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, lines, StandardCharsets.UTF_8);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a model written by {@link #save}.
+     *
+     * @throws IllegalArgumentException if a line is invalid or a feature is missing, naming the file
+     */
+    public static LogisticRegression load(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        int d = Feature.COUNT;
+        double[] means = new double[d];
+        double[] scales = new double[d];
+        double[] theta = new double[d + 1];
+        boolean[] seen = new boolean[d];
+        double[] header = {Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String where = file + ":" + (i + 1) + ": ";
+            String[] cells = line.split(",", -1);
+            int headerIndex = List.of("rows", "iterations", "loss", "intercept").indexOf(cells[0].trim());
+            if (headerIndex >= 0 && cells.length == 2) {
+                header[headerIndex] = number(cells[1], where);
+                continue;
+            }
+            if (cells.length != 4) {
+                throw new IllegalArgumentException(where + "expected a name and value or 4 columns but found " + cells.length);
+            }
+            Feature feature;
+            try {
+                feature = Feature.valueOf(cells[0].trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(where + "unknown feature " + cells[0].trim());
+            }
+            int j = feature.ordinal();
+            means[j] = number(cells[1], where);
+            scales[j] = number(cells[2], where);
+            theta[j] = number(cells[3], where);
+            seen[j] = true;
+        }
+        for (Feature feature : Feature.values()) {
+            if (!seen[feature.ordinal()]) {
+                throw new IllegalArgumentException(file + ": no line for feature " + feature.getRuleName());
+            }
+        }
+        for (double value : header) {
+            if (Double.isNaN(value)) {
+                throw new IllegalArgumentException(file + ": rows, iterations, loss and intercept are all required");
+            }
+        }
+        theta[d] = header[3];
+        return new LogisticRegression(means, scales, theta, (int) header[0], (int) header[1], header[2]);
+    }
+
+    private static double number(String cell, String where) {
+        double value;
+        try {
+            value = Double.parseDouble(cell.trim());
+        } catch (NumberFormatException e) {
+            value = Double.NaN;
+        }
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException(where + "not a finite number: " + cell.trim());
+        }
+        return value;
+    }
+
+    private double standardize(double value, int column) {
+        return value == value ? (value - means[column]) * scales[column] : 0.0;
+    }
+
+    /**
+     * Fits a model to the training set.
+     *
+     * @param l2 strength of the penalty on the squared weights
+     * @param maxIterations upper bound on L-BFGS iterations
+     * @throws IllegalArgumentException if the training set is empty
+     */
+    public static LogisticRegression fit(TrainingSet data, double l2, int maxIterations, ForkJoinPool pool) {
+        if (data.getRows() == 0) {
+            throw new IllegalArgumentException("Cannot fit a model to an empty training set");
+        }
+        int d = data.getColumns();
+        double[] means = new double[d];
+        double[] scales = new double[d];
+        standardization(data, means, scales);
+        Objective objective = new Objective(data, means, scales, l2, pool);
+
+        double[] theta = new double[d + 1];
+        double[] gradient = new double[d + 1];
+        double f = objective.evaluate(theta, gradient);
+        Deque<double[][]> history = new ArrayDeque<>();
+        int iteration = 0;
+        while (iteration < maxIterations && norm(gradient) > GRADIENT_TOLERANCE) {
+            iteration++;
+            double[] direction = direction(gradient, history);
+            double slope = dot(direction, gradient);
+            if (slope >= 0) {
+                // Not a descent direction: start again from steepest descent.
+                history.clear();
+                direction = negate(gradient);
+                slope = dot(direction, gradient);
+            }
+
+            // Backtracking line search on the Armijo condition.
+            double step = history.isEmpty() ? Math.min(1.0, 1.0 / norm(gradient)) : 1.0;
+            double[] next = new double[d + 1];
+            double[] nextGradient = new double[d + 1];
+            double nextF = Double.NaN;
+            boolean accepted = false;
+            for (int tries = 0; tries < MAX_LINE_SEARCH_STEPS; tries++) {
+                for (int j = 0; j <= d; j++) {
+                    next[j] = theta[j] + step * direction[j];
+                }
+                nextF = objective.evaluate(next, nextGradient);
+                if (nextF <= f + 1e-4 * step * slope) {
+                    accepted = true;
+                    break;
+                }
+                step *= 0.5;
+            }
+            if (!accepted) {
+                break;
+            }
+
+            double[] s = new double[d + 1];
+            double[] y = new double[d + 1];
+            for (int j = 0; j <= d; j++) {
+                s[j] = next[j] - theta[j];
+                y[j] = nextGradient[j] - gradient[j];
+            }
+            double sy = dot(s, y);
+            if (sy > 1e-12) {
+                history.addFirst(new double[][] {s, y, {1.0 / sy}});
+                if (history.size() > HISTORY) {
+                    history.removeLast();
+                }
+            }
+            boolean converged = f - nextF <= LOSS_TOLERANCE * Math.max(1.0, Math.abs(f));
+            theta = next;
+            gradient = nextGradient;
+            f = nextF;
+            if (converged) {
+                break;
+            }
+        }
+        return new LogisticRegression(means, scales, theta, data.getRows(), iteration, f);
+    }
+
+    // The L-BFGS two-loop recursion: an approximation of -H^-1 * gradient from the
+    // most recent steps (newest first in history) and their gradient changes.
+    private static double[] direction(double[] gradient, Deque<double[][]> history) {
+        double[] q = gradient.clone();
+        double[] alphas = new double[history.size()];
+        int i = 0;
+        for (double[][] pair : history) {
+            alphas[i] = pair[2][0] * dot(pair[0], q);
+            axpy(-alphas[i], pair[1], q);
+            i++;
+        }
+        if (!history.isEmpty()) {
+            double[][] newest = history.peekFirst();
+            double gamma = dot(newest[0], newest[1]) / dot(newest[1], newest[1]);
+            for (int j = 0; j < q.length; j++) {
+                q[j] *= gamma;
+            }
+        }
+        Iterator<double[][]> oldestFirst = history.descendingIterator();
+        for (i = history.size() - 1; oldestFirst.hasNext(); i--) {
+            double[][] pair = oldestFirst.next();
+            double beta = pair[2][0] * dot(pair[1], q);
+            axpy(alphas[i] - beta, pair[0], q);
+        }
+        return negate(q);
+    }
+
+    private static void standardization(TrainingSet data, double[] means, double[] scales) {
+        int d = data.getColumns();
+        double[] x = data.features();
+        long[] counts = new long[d];
+        double[] squares = new double[d];
+        // Welford's online mean and variance, skipping missing values.
+        for (int r = 0; r < data.getRows(); r++) {
+            for (int j = 0; j < d; j++) {
+                double value = x[r * d + j];
+                if (value == value) {
+                    counts[j]++;
+                    double delta = value - means[j];
+                    means[j] += delta / counts[j];
+                    squares[j] += delta * (value - means[j]);
+                }
+            }
+        }
+        for (int j = 0; j < d; j++) {
+            double deviation = counts[j] > 1 ? Math.sqrt(squares[j] / (counts[j] - 1)) : 0.0;
+            scales[j] = deviation > 1e-12 ? 1.0 / deviation : 0.0;
+        }
+    }
+
+    /** Regularised mean log loss and its gradient, summed over row ranges in parallel. */
+    private static final class Objective {
+        final TrainingSet data;
+        final double[] means;
+        final double[] scales;
+        final double l2;
+        final ForkJoinPool pool;
+        final int grain;
+
+        Objective(TrainingSet data, double[] means, double[] scales, double l2, ForkJoinPool pool) {
+            this.data = data;
+            this.means = means;
+            this.scales = scales;
+            this.l2 = l2;
+            this.pool = pool;
+            this.grain = Math.max(MIN_TASK_ROWS, data.getRows() / (pool.getParallelism() * 4));
+        }
+
+        double evaluate(double[] theta, double[] gradient) {
+            int d = means.length;
+            double[] sums = pool.invoke(new Pass(this, theta, 0, data.getRows()));
+            double n = data.getRows();
+            double penalty = 0.0;
+            for (int j = 0; j < d; j++) {
+                gradient[j] = sums[j] / n + l2 * theta[j];
+                penalty += theta[j] * theta[j];
+            }
+            gradient[d] = sums[d] / n;
+            return sums[d + 1] / n + 0.5 * l2 * penalty;
+        }
+    }
+
+    // Sums of the gradient (weights, then intercept) and of the loss over rows [from, to).
+    private static final class Pass extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Objective objective;
+        private final double[] theta;
+        private final int from;
+        private final int to;
+
+        Pass(Objective objective, double[] theta, int from, int to) {
+            this.objective = objective;
+            this.theta = theta;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > objective.grain) {
+                int middle = (from + to) >>> 1;
+                Pass left = new Pass(objective, theta, from, middle);
+                left.fork();
+                double[] sums = new Pass(objective, theta, middle, to).compute();
+                double[] other = left.join();
+                for (int j = 0; j < sums.length; j++) {
+                    sums[j] += other[j];
+                }
+                return sums;
+            }
+            double[] means = objective.means;
+            double[] scales = objective.scales;
+            double[] x = objective.data.features();
+            double[] y = objective.data.labels();
+            int d = means.length;
+            double[] sums = new double[d + 2];
+            double[] row = new double[d];
+            for (int r = from; r < to; r++) {
+                double z = theta[d];
+                int offset = r * d;
+                for (int j = 0; j < d; j++) {
+                    double value = x[offset + j];
+                    row[j] = value == value ? (value - means[j]) * scales[j] : 0.0;
+                    z += theta[j] * row[j];
+                }
+                double error = 1.0 / (1.0 + Math.exp(-z)) - y[r];
+                for (int j = 0; j < d; j++) {
+                    sums[j] += error * row[j];
+                }
+                sums[d] += error;
+                // log(1 + e^z) - y * z, without overflow for large |z|.
+                sums[d + 1] += (z > 0 ? z + Math.log1p(Math.exp(-z)) : Math.log1p(Math.exp(z))) - y[r] * z;
+            }
+            return sums;
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double norm(double[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+
+    private static void axpy(double factor, double[] x, double[] y) {
+        for (int i = 0; i < y.length; i++) {
+            y[i] += factor * x[i];
+        }
+    }
+
+    private static double[] negate(double[] a) {
+        double[] result = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = -a[i];
+        }
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,506 @@
+package com.healthprediction.ml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The thresholds of {@link HealthRiskPredictor} and {@link DiseasePredictor}, read from a
+ * table and compiled into flat arrays that are evaluated over a {@link Feature} vector.
+ *
+ * <p>Each line of a rule file is {@code model,group,clause,feature,comparator,threshold,effect}:
+ * <ul>
+ *   <li>{@code model} is {@code risk}, {@code health} or {@code disease};</li>
+ *   <li>the conditions ({@code feature comparator threshold}, with {@code >}, {@code >=},
+ *       {@code <}, {@code <=} or {@code ==}) of the lines with the same group and clause
+ *       must all hold for the clause to match;</li>
+ *   <li>each group takes the effect of its first matching clause, in file order, so an
+ *       "or" is several clauses with the same effect and an "else if" a later clause;</li>
+ *   <li>for {@code risk} and {@code health} the effect is a number added to the score, or
+ *       {@code N/unit} for N per unit of the clause's first feature past its threshold;
+ *       for {@code disease} it is a {@link DiseaseCode}. Every line of a clause repeats it.</li>
+ * </ul>
+ * Blank lines and lines starting with {@code #} are skipped. {@link #DEFAULT_RULES} are
+ * the built-in rules.
+ *
+ * <p>The rules in effect are {@link #current()}: the defaults, or the file named by
+ * {@code healthprediction.ml.rulesFile}, which is checked for changes every
+ * {@code healthprediction.ml.rulesReloadSeconds} (default 5) seconds. A changed file is
+ * compiled on the side and swapped in whole, so predictions already running finish with
+ * the rules they started with; a file that does not compile is reported and ignored.
+ */
+public final class PredictionRules {
+    private static final String RULES_FILE = System.getProperty("healthprediction.ml.rulesFile");
+    private static final long RELOAD_SECONDS = Long.getLong("healthprediction.ml.rulesReloadSeconds", 5);
+    private static final int MAX_CONDITIONS = 64;
+
+    /** A set of rules, what its score starts from and the range it is kept in. */
+    public enum Model {
+        RISK(0.0, Double.NEGATIVE_INFINITY, 1.0),
+        HEALTH(100.0, 0.0, 100.0),
+        DISEASE(0.0, 0.0, 0.0);
+
+        final double base;
+        final double min;
+        final double max;
+
+        Model(double base, double min, double max) {
+            this.base = base;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    public static final List<String> DEFAULT_RULES = List.of(
+        "# model,group,clause,feature,comparator,threshold,effect",
+        "risk,heart_rate,1,heart_rate,>,100,0.2",
+        "risk,heart_rate,2,heart_rate,<,60,0.2",
+        "risk,blood_pressure,1,systolic_bp,>,140,0.3",
+        "risk,blood_pressure,2,diastolic_bp,>,90,0.3",
+        "risk,blood_sugar,1,blood_sugar,>,120,0.25",
+        "risk,cholesterol,1,cholesterol,>,200,0.2",
+        "risk,smoking,1,smoker,==,1,0.3",
+        "risk,exercise,1,no_exercise,==,1,0.15",
+        "risk,stress,1,stress_level,>,7,0.1",
+        "risk,temperature,1,temperature,>,37.5,0.05",
+        "risk,age,1,age,>=,60,0.2",
+        "risk,age,2,age,>=,40,0.1",
+        "risk,allergies,1,has_allergies,==,1,0.05",
+        "risk,medication,1,on_medication,==,1,0.1",
+        "health,heart_rate,1,heart_rate,>,90,-10",
+        "health,heart_rate,2,heart_rate,<,70,-10",
+        "health,blood_pressure,1,systolic_bp,>,130,-15",
+        "health,blood_pressure,2,diastolic_bp,>,85,-15",
+        "health,blood_sugar,1,blood_sugar,>,100,-15",
+        "health,cholesterol,1,cholesterol,>,180,-10",
+        "health,smoking,1,smoker,==,1,-25",
+        "health,exercise,1,no_exercise,==,1,-10",
+        "health,stress,1,stress_level,>,5,-2/unit",
+        "disease,blood_pressure,1,systolic_bp,>,140,hypertension_heart_disease",
+        "disease,blood_pressure,1,diastolic_bp,>,90,hypertension_heart_disease",
+        "disease,blood_pressure,2,cholesterol,>,240,hypertension_heart_disease",
+        "disease,blood_pressure,3,systolic_bp,>,130,pre_hypertension",
+        "disease,blood_pressure,4,diastolic_bp,>,85,pre_hypertension",
+        "disease,blood_sugar,1,blood_sugar,>,125,diabetes_type_2",
+        "disease,blood_sugar,2,blood_sugar,>,100,pre_diabetes",
+        "disease,respiratory,1,temperature,>,38,respiratory_infection",
+        "disease,respiratory,1,cough,==,1,respiratory_infection",
+        "disease,infection,1,temperature,>,37.8,general_infection",
+        "disease,infection,1,temperature,<=,38,general_infection",
+        "disease,infection,2,temperature,>,37.8,general_infection",
+        "disease,infection,2,cough,==,0,general_infection"
+    );
+
+    private static volatile PredictionRules current;
+    private static final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    private final String source;
+    private final Compiled risk;
+    private final Compiled health;
+    private final Compiled disease;
+
+    private PredictionRules(String source, Map<Model, Compiled> models) {
+        this.source = source;
+        this.risk = models.get(Model.RISK);
+        this.health = models.get(Model.HEALTH);
+        this.disease = models.get(Model.DISEASE);
+    }
+
+    /** Health risk between 0 and 1 (see {@link RiskTier}). */
+    public double riskScore(double[] features) {
+        return risk.score(features);
+    }
+
+    /** Health score between 0 and 100, higher is better. */
+    public double healthScore(double[] features) {
+        return health.score(features);
+    }
+
+    /** The predicted diseases as a mask of {@link DiseaseCode} bits. */
+    public int diseaseCodes(double[] features) {
+        return disease.outcomes(features);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return "PredictionRules{source=" + source + ", conditions=" + risk.conditionCount() + "/"
+                + health.conditionCount() + "/" + disease.conditionCount() + '}';
+    }
+
+    /** The rules in effect; loaded on first use. */
+    public static PredictionRules current() {
+        PredictionRules rules = current;
+        return rules != null ? rules : initialize();
+    }
+
+    /** Called after the rules in effect are replaced, e.g. to drop predictions made with the old ones. */
+    public static void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Compiles the rule file and puts it in effect.
+     *
+     * @throws IllegalArgumentException if the file has an invalid line
+     */
+    public static void load(Path file) throws IOException {
+        PredictionRules rules = parse(Files.readAllLines(file, StandardCharsets.UTF_8), file.toString());
+        synchronized (PredictionRules.class) {
+            current = rules;
+        }
+        System.out.println("Prediction rules loaded from " + file);
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error notifying prediction rules reload: " + e.getMessage());
+            }
+        }
+    }
+
+    public static PredictionRules defaults() {
+        return parse(DEFAULT_RULES, "built-in rules");
+    }
+
+    private static synchronized PredictionRules initialize() {
+        if (current == null) {
+            PredictionRules rules = defaults();
+            if (RULES_FILE != null) {
+                Path file = Paths.get(RULES_FILE);
+                try {
+                    rules = parse(Files.readAllLines(file, StandardCharsets.UTF_8), file.toString());
+                    System.out.println("Prediction rules loaded from " + file);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.err.println("Could not load prediction rules from " + file + ", using the built-in rules: " + e.getMessage());
+                }
+                watch(file);
+            }
+            current = rules;
+        }
+        return current;
+    }
+
+    private static void watch(Path file) {
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "prediction-rules-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        FileTime[] lastModified = {modifiedTime(file)};
+        watcher.scheduleWithFixedDelay(() -> {
+            FileTime modified = modifiedTime(file);
+            if (modified == null || modified.equals(lastModified[0])) {
+                return;
+            }
+            lastModified[0] = modified;
+            try {
+                load(file);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Could not reload prediction rules from " + file + ", keeping the previous rules: " + e.getMessage());
+            }
+        }, RELOAD_SECONDS, RELOAD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static FileTime modifiedTime(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compiles rule lines; {@code source} names them in error messages.
+     *
+     * @throws IllegalArgumentException if a line is invalid, naming the line
+     */
+    public static PredictionRules parse(List<String> lines, String source) {
+        Map<Model, Map<String, Map<String, ClauseSpec>>> groupsByModel = new EnumMap<>(Model.class);
+        for (Model model : Model.values()) {
+            groupsByModel.put(model, new LinkedHashMap<>());
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String where = source + ":" + (i + 1) + ": ";
+            String[] cells = line.split(",", -1);
+            if (cells.length != 7) {
+                throw new IllegalArgumentException(where + "expected 7 columns but found " + cells.length);
+            }
+            for (int c = 0; c < cells.length; c++) {
+                cells[c] = cells[c].trim();
+            }
+            Model model = parseName(Model.class, cells[0], where + "unknown model");
+            ClauseSpec clause = groupsByModel.get(model)
+                    .computeIfAbsent(cells[1], group -> new LinkedHashMap<>())
+                    .computeIfAbsent(cells[2], id -> new ClauseSpec(cells[6]));
+            if (!clause.effect.equals(cells[6])) {
+                throw new IllegalArgumentException(where + "effect " + cells[6] + " differs from " + clause.effect
+                                                   + " earlier in the clause");
+            }
+            Feature feature = parseName(Feature.class, cells[3], where + "unknown feature");
+            double threshold;
+            try {
+                threshold = Double.parseDouble(cells[5]);
+            } catch (NumberFormatException e) {
+                threshold = Double.NaN;
+            }
+            if (!Double.isFinite(threshold)) {
+                throw new IllegalArgumentException(where + "threshold is not a finite number: " + cells[5]);
+            }
+            switch (cells[4]) {
+                case ">":  clause.add(feature, 1.0, threshold, false); break;
+                case ">=": clause.add(feature, 1.0, threshold, true); break;
+                case "<":  clause.add(feature, -1.0, threshold, false); break;
+                case "<=": clause.add(feature, -1.0, threshold, true); break;
+                case "==":
+                    clause.add(feature, 1.0, threshold, true);
+                    clause.add(feature, -1.0, threshold, true);
+                    break;
+                default:
+                    throw new IllegalArgumentException(where + "unknown comparator " + cells[4]);
+            }
+            clause.parseEffect(model, where);
+        }
+        Map<Model, Compiled> models = new EnumMap<>(Model.class);
+        for (Map.Entry<Model, Map<String, Map<String, ClauseSpec>>> entry : groupsByModel.entrySet()) {
+            models.put(entry.getKey(), new Compiled(entry.getKey(), entry.getValue().values(), source));
+        }
+        return new PredictionRules(source, models);
+    }
+
+    private static <E extends Enum<E>> E parseName(Class<E> type, String name, String error) {
+        try {
+            return Enum.valueOf(type, name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(error + " " + name);
+        }
+    }
+
+    // One condition as written: sign * feature > threshold, or >= when inclusive. A "<"
+    // is a ">" on the negated feature, so that evaluating any condition is one comparison.
+    private static final class ConditionSpec {
+        final Feature feature;
+        final double sign;
+        final double threshold;
+        final boolean inclusive;
+
+        ConditionSpec(Feature feature, double sign, double threshold, boolean inclusive) {
+            this.feature = feature;
+            this.sign = sign;
+            this.threshold = threshold;
+            this.inclusive = inclusive;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ConditionSpec)) {
+                return false;
+            }
+            ConditionSpec that = (ConditionSpec) other;
+            return feature == that.feature && sign == that.sign && threshold == that.threshold && inclusive == that.inclusive;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((feature.hashCode() * 31 + Double.hashCode(sign)) * 31 + Double.hashCode(threshold)) * 31 + (inclusive ? 1 : 0);
+        }
+    }
+
+    private static final class ClauseSpec {
+        final String effect;
+        final List<ConditionSpec> conditions = new ArrayList<>();
+        double weight;
+        boolean perUnit;
+        int outcome;
+
+        ClauseSpec(String effect) {
+            this.effect = effect;
+        }
+
+        void add(Feature feature, double sign, double threshold, boolean inclusive) {
+            conditions.add(new ConditionSpec(feature, sign, threshold, inclusive));
+        }
+
+        void parseEffect(Model model, String where) {
+            if (model == Model.DISEASE) {
+                outcome = parseName(DiseaseCode.class, effect, where + "unknown disease code").bit();
+                return;
+            }
+            perUnit = effect.endsWith("/unit");
+            String number = perUnit ? effect.substring(0, effect.length() - "/unit".length()) : effect;
+            try {
+                weight = Double.parseDouble(number);
+            } catch (NumberFormatException e) {
+                weight = Double.NaN;
+            }
+            if (!Double.isFinite(weight)) {
+                throw new IllegalArgumentException(where + "effect is not a finite number: " + effect);
+            }
+        }
+    }
+
+    /**
+     * One model's rules as parallel arrays. Every distinct condition is evaluated into one
+     * bit of a mask, strict comparisons first and then inclusive ones, so that neither loop
+     * tests what kind of comparison it makes. A clause matches when all of its bits are
+     * set, and each group's first match is picked with masks: with varied records, a
+     * branch on the data mispredicts about half the time and costs more than the rest
+     * of the evaluation.
+     */
+    private static final class Compiled {
+        final Model model;
+        final int[] conditionFeatures;
+        // Sign and threshold of each condition, side by side.
+        final double[] conditionTerms;
+        final int strictConditions;
+        final long[] clauseMasks;
+        final double[] clauseWeights;
+        // Feature a clause's weight is per unit of, or -1 for a flat weight.
+        final int[] clauseUnitFeatures;
+        final double[] clauseUnitOffsets;
+        final int[] clauseOutcomes;
+        // 0 for the first clause of a group, 1 for the others.
+        final long[] clauseContinuesGroup;
+
+        Compiled(Model model, Iterable<Map<String, ClauseSpec>> groups, String source) {
+            this.model = model;
+            Map<ConditionSpec, Integer> conditionIndexes = new LinkedHashMap<>();
+            List<ClauseSpec> clauses = new ArrayList<>();
+            List<Integer> groupStarts = new ArrayList<>();
+            for (Map<String, ClauseSpec> group : groups) {
+                groupStarts.add(clauses.size());
+                for (ClauseSpec clause : group.values()) {
+                    for (ConditionSpec condition : clause.conditions) {
+                        conditionIndexes.putIfAbsent(condition, 0);
+                    }
+                    clauses.add(clause);
+                }
+            }
+            if (conditionIndexes.size() > MAX_CONDITIONS) {
+                throw new IllegalArgumentException(source + ": more than " + MAX_CONDITIONS
+                                                   + " distinct conditions for " + model);
+            }
+
+            List<ConditionSpec> conditions = new ArrayList<>(conditionIndexes.keySet());
+            conditions.sort((a, b) -> Boolean.compare(a.inclusive, b.inclusive));
+            int n = conditions.size();
+            int strict = 0;
+            conditionFeatures = new int[n];
+            conditionTerms = new double[2 * n];
+            for (int i = 0; i < n; i++) {
+                ConditionSpec condition = conditions.get(i);
+                conditionIndexes.put(condition, i);
+                conditionFeatures[i] = condition.feature.ordinal();
+                conditionTerms[2 * i] = condition.sign;
+                conditionTerms[2 * i + 1] = condition.sign * condition.threshold + 0.0;
+                strict += condition.inclusive ? 0 : 1;
+            }
+            strictConditions = strict;
+
+            int c = clauses.size();
+            clauseMasks = new long[c];
+            clauseWeights = new double[c];
+            clauseUnitFeatures = new int[c];
+            clauseUnitOffsets = new double[c];
+            clauseOutcomes = new int[c];
+            clauseContinuesGroup = new long[c];
+            for (int i = 0; i < c; i++) {
+                ClauseSpec clause = clauses.get(i);
+                for (ConditionSpec condition : clause.conditions) {
+                    clauseMasks[i] |= 1L << conditionIndexes.get(condition);
+                }
+                ConditionSpec first = clause.conditions.get(0);
+                // Units past a "<" threshold count downwards.
+                clauseWeights[i] = clause.perUnit ? clause.weight * first.sign : clause.weight;
+                clauseUnitFeatures[i] = clause.perUnit ? first.feature.ordinal() : -1;
+                clauseUnitOffsets[i] = first.threshold;
+                clauseOutcomes[i] = clause.outcome;
+                clauseContinuesGroup[i] = groupStarts.contains(i) ? 0 : 1;
+            }
+        }
+
+        int conditionCount() {
+            return conditionFeatures.length;
+        }
+
+        // Bit i is set when condition i holds. Each comparison is read off the sign of a
+        // difference rather than made with a conditional, which would compile to a branch
+        // per condition. Adding 0.0 turns -0.0 into 0.0, so that equal values subtract to
+        // 0.0, and NaN features are masked out as no comparison with them holds.
+        long match(double[] features) {
+            long bits = 0;
+            int i = 0;
+            for (; i < strictConditions; i++) {
+                double value = conditionTerms[2 * i] * features[conditionFeatures[i]] + 0.0;
+                long above = Double.doubleToRawLongBits(conditionTerms[2 * i + 1] - value) >>> 63;
+                bits |= (above & notNaN(value)) << i;
+            }
+            for (; i < conditionFeatures.length; i++) {
+                double value = conditionTerms[2 * i] * features[conditionFeatures[i]] + 0.0;
+                long notBelow = ~Double.doubleToRawLongBits(value - conditionTerms[2 * i + 1]) >>> 63;
+                bits |= (notBelow & notNaN(value)) << i;
+            }
+            return bits;
+        }
+
+        private static long notNaN(double value) {
+            long magnitude = Double.doubleToRawLongBits(value) & Long.MAX_VALUE;
+            return ~(0x7ff0000000000000L - magnitude) >>> 63;
+        }
+
+        // 1 when every bit of the mask is set in bits, else 0.
+        private static long matches(long bits, long mask) {
+            long missing = (bits & mask) ^ mask;
+            return ((missing - 1) & ~missing) >>> 63;
+        }
+
+        double score(double[] features) {
+            long bits = match(features);
+            double score = model.base;
+            long taken = 0;
+            for (int clause = 0; clause < clauseMasks.length; clause++) {
+                taken &= clauseContinuesGroup[clause];
+                long apply = matches(bits, clauseMasks[clause]) & ~taken;
+                taken |= apply;
+                int unit = clauseUnitFeatures[clause];
+                double effect = unit < 0 ? clauseWeights[clause]
+                                         : clauseWeights[clause] * (features[unit] - clauseUnitOffsets[clause]);
+                score += Double.longBitsToDouble(Double.doubleToRawLongBits(effect) & -apply);
+            }
+            return Math.max(model.min, Math.min(model.max, score));
+        }
+
+        int outcomes(double[] features) {
+            long bits = match(features);
+            int outcomes = 0;
+            long taken = 0;
+            for (int clause = 0; clause < clauseMasks.length; clause++) {
+                taken &= clauseContinuesGroup[clause];
+                long apply = matches(bits, clauseMasks[clause]) & ~taken;
+                taken |= apply;
+                outcomes |= clauseOutcomes[clause] & (int) -apply;
+            }
+            return outcomes;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.healthprediction.ml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A piece of advice {@link RecommendationEngine} can give, in the order it is presented.
+ * A patient's recommendations are passed around as a bit mask, one bit per constant by
+ * ordinal.
+ */
+public enum Recommendation {
+    BALANCED_DIET("Maintain a balanced diet rich in fruits, vegetables, and whole grains."),
+    REGULAR_EXERCISE("Aim for at least 30 minutes of moderate-intensity exercise most days of the week."),
+    SLEEP("Ensure 7-9 hours of quality sleep per night."),
+    HYDRATION("Stay hydrated by drinking plenty of water throughout the day."),
+    STRESS_REDUCTION("Practice stress-reducing techniques like meditation or yoga."),
+    MONITOR_BLOOD_PRESSURE("Monitor blood pressure regularly and consider low-sodium diet."),
+    LIMIT_SUGAR("Limit intake of sugary foods and refined carbohydrates."),
+    NUTRITIONIST("Consult a nutritionist for dietary guidance on blood sugar management."),
+    REDUCE_FATS("Reduce saturated and trans fats in your diet. Increase fiber intake."),
+    QUIT_SMOKING("Strongly consider smoking cessation programs for overall health improvement."),
+    START_EXERCISING("Gradually introduce regular physical activity into your routine."),
+    STRESS_MANAGEMENT("Explore stress management techniques like deep breathing or mindfulness."),
+    COUNSELING("Consider speaking with a counselor if stress is overwhelming."),
+    CARDIOLOGIST("Schedule a consultation with a cardiologist for detailed assessment."),
+    HEART_HEALTHY_DIET("Follow a heart-healthy diet (DASH diet recommended)."),
+    ENDOCRINOLOGIST("Consult an endocrinologist for diabetes management plan."),
+    MONITOR_BLOOD_SUGAR("Regular blood sugar monitoring is crucial."),
+    REST_AND_ISOLATE("Rest adequately and avoid close contact with others to prevent spread."),
+    SEEK_ADVICE_IF_WORSE("Seek medical advice if symptoms worsen or persist."),
+    URGENT_CHECK_UP("URGENT: Consult a medical professional immediately for a comprehensive check-up."),
+    FOLLOW_TREATMENT("Do not delay any prescribed treatments or lifestyle changes."),
+    FOLLOW_UP("Schedule a follow-up appointment with your primary care physician to discuss health risks.");
+
+    private static final Recommendation[] VALUES = values();
+
+    private final String description;
+
+    Recommendation(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() { return description; }
+
+    public long bit() {
+        return 1L << ordinal();
+    }
+
+    public boolean in(long mask) {
+        return (mask & bit()) != 0;
+    }
+
+    /** The recommendations in the mask, in presentation order. */
+    public static List<Recommendation> fromMask(long mask) {
+        List<Recommendation> recommendations = new ArrayList<>(Long.bitCount(mask));
+        for (Recommendation recommendation : VALUES) {
+            if (recommendation.in(mask)) {
+                recommendations.add(recommendation);
+            }
+        }
+        return recommendations;
+    }
+}
\ No newline at end of file
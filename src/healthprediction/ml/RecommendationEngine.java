@@ -40,78 +40,81 @@ public class RecommendationEngine {
             throw new IllegalStateException("RecommendationEngine model not loaded. Call loadModel() first.");
         }
 
+        int diseaseCodes = 0;
+        if (predictedDiseases != null) {
+            for (DiseaseCode code : DiseaseCode.values()) {
+                if (predictedDiseases.contains(code.getDescription())) {
+                    diseaseCodes |= code.bit();
+                }
+            }
+        }
+
         List<String> recommendations = new ArrayList<>();
+        for (Recommendation recommendation : Recommendation.fromMask(recommend(patient, latestRecord, riskScore, diseaseCodes))) {
+            recommendations.add(recommendation.getDescription());
+        }
+        return recommendations;
+    }
 
-        
-        recommendations.add("Maintain a balanced diet rich in fruits, vegetables, and whole grains.");
-        recommendations.add("Aim for at least 30 minutes of moderate-intensity exercise most days of the week.");
-        recommendations.add("Ensure 7-9 hours of quality sleep per night.");
-        recommendations.add("Stay hydrated by drinking plenty of water throughout the day.");
-        recommendations.add("Practice stress-reducing techniques like meditation or yoga.");
+    /**
+     * Same rules as {@link #generateRecommendations}, taking the predicted diseases as a
+     * mask of {@link DiseaseCode} bits and returning a mask of {@link Recommendation} bits.
+     */
+    public long recommend(Patient patient, HealthRecord latestRecord, double riskScore, int diseaseCodes)
+            throws IllegalStateException {
+        if (!modelLoaded) {
+            throw new IllegalStateException("RecommendationEngine model not loaded. Call loadModel() first.");
+        }
+
+        long recommendations = Recommendation.BALANCED_DIET.bit() | Recommendation.REGULAR_EXERCISE.bit()
+                | Recommendation.SLEEP.bit() | Recommendation.HYDRATION.bit() | Recommendation.STRESS_REDUCTION.bit();
 
         
         if (latestRecord != null) {
             if (latestRecord.getSystolicBP() > 130 || latestRecord.getDiastolicBP() > 85) {
-                recommendations.add("Monitor blood pressure regularly and consider low-sodium diet.");
+                recommendations |= Recommendation.MONITOR_BLOOD_PRESSURE.bit();
             }
             if (latestRecord.getBloodSugar() > 100) {
-                recommendations.add("Limit intake of sugary foods and refined carbohydrates.");
-                recommendations.add("Consult a nutritionist for dietary guidance on blood sugar management.");
+                recommendations |= Recommendation.LIMIT_SUGAR.bit() | Recommendation.NUTRITIONIST.bit();
             }
             if (latestRecord.getCholesterol() > 180) {
-                recommendations.add("Reduce saturated and trans fats in your diet. Increase fiber intake.");
+                recommendations |= Recommendation.REDUCE_FATS.bit();
             }
             if ("Current".equalsIgnoreCase(latestRecord.getSmokingStatus())) {
-                recommendations.add("Strongly consider smoking cessation programs for overall health improvement.");
+                recommendations |= Recommendation.QUIT_SMOKING.bit();
             }
             if ("None".equalsIgnoreCase(latestRecord.getExerciseFrequency())) {
-                recommendations.add("Gradually introduce regular physical activity into your routine.");
+                recommendations |= Recommendation.START_EXERCISING.bit();
             }
             if (latestRecord.getStressLevel() > 6) {
-                recommendations.add("Explore stress management techniques like deep breathing or mindfulness.");
-                recommendations.add("Consider speaking with a counselor if stress is overwhelming.");
+                recommendations |= Recommendation.STRESS_MANAGEMENT.bit() | Recommendation.COUNSELING.bit();
             }
         }
 
         
-        if (predictedDiseases != null && !predictedDiseases.isEmpty()) {
-            for (String disease : predictedDiseases) {
-                if (disease.contains("Hypertension") || disease.contains("Heart Disease")) {
-                    recommendations.add("Schedule a consultation with a cardiologist for detailed assessment.");
-                    recommendations.add("Follow a heart-healthy diet (DASH diet recommended).");
-                } else if (disease.contains("Diabetes")) {
-                    recommendations.add("Consult an endocrinologist for diabetes management plan.");
-                    recommendations.add("Regular blood sugar monitoring is crucial.");
-                } else if (disease.contains("Respiratory Infection")) {
-                    recommendations.add("Rest adequately and avoid close contact with others to prevent spread.");
-                    recommendations.add("Seek medical advice if symptoms worsen or persist.");
-                }
-                
-            }
+        if (DiseaseCode.HYPERTENSION_HEART_DISEASE.in(diseaseCodes)) {
+            recommendations |= Recommendation.CARDIOLOGIST.bit() | Recommendation.HEART_HEALTHY_DIET.bit();
+        }
+        if (DiseaseCode.DIABETES_TYPE_2.in(diseaseCodes)) {
+            recommendations |= Recommendation.ENDOCRINOLOGIST.bit() | Recommendation.MONITOR_BLOOD_SUGAR.bit();
+        }
+        if (DiseaseCode.RESPIRATORY_INFECTION.in(diseaseCodes)) {
+            recommendations |= Recommendation.REST_AND_ISOLATE.bit() | Recommendation.SEEK_ADVICE_IF_WORSE.bit();
         }
 
         
         if (riskScore > 0.7) {
-            recommendations.add("URGENT: Consult a medical professional immediately for a comprehensive check-up.");
-            recommendations.add("Do not delay any prescribed treatments or lifestyle changes.");
+            recommendations |= Recommendation.URGENT_CHECK_UP.bit() | Recommendation.FOLLOW_TREATMENT.bit();
         } else if (riskScore > 0.4) {
-            recommendations.add("Schedule a follow-up appointment with your primary care physician to discuss health risks.");
+            recommendations |= Recommendation.FOLLOW_UP.bit();
         }
 
         return recommendations;
     }
 
     public void retrainModel(List<Patient> patients, List<HealthRecord> healthRecords) {
-        
-        
-        
-        
-        System.out.println("Retraining RecommendationEngine model with patient and health record data...");
-        try {
-            Thread.sleep(2500); 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        System.out.println("RecommendationEngine model retraining complete.");
+        // Recommendations follow from the risk score and predicted diseases, so they change
+        // when those models do; there is nothing of its own to fit.
+        System.out.println("RecommendationEngine has no weights to fit to " + healthRecords.size() + " health records.");
     }
 }
\ No newline at end of file
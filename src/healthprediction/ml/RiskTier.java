@@ -0,0 +1,28 @@
+package com.healthprediction.ml;
+
+/** Band of a health risk score from {@link HealthRiskPredictor}, with the advice that goes with it. */
+public enum RiskTier {
+    LOW("Low Risk", "Maintain healthy lifestyle, routine check-up recommended."),
+    MODERATE("Moderate Risk", "Consult a doctor soon for evaluation."),
+    HIGH("High Risk", "Immediate medical attention advised.");
+
+    private final String label;
+    private final String advice;
+
+    RiskTier(String label, String advice) {
+        this.label = label;
+        this.advice = advice;
+    }
+
+    public String getLabel() { return label; }
+
+    public String getAdvice() { return advice; }
+
+    /** The tier of a risk score between 0 and 1: above 0.7 is high, above 0.4 moderate. */
+    public static RiskTier of(double riskScore) {
+        if (riskScore > 0.7) {
+            return HIGH;
+        }
+        return riskScore > 0.4 ? MODERATE : LOW;
+    }
+}
\ No newline at end of file
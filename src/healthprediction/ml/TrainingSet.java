@@ -0,0 +1,82 @@
+package com.healthprediction.ml;
+
+import com.healthprediction.model.HealthRecord;
+import com.healthprediction.model.Patient;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Labelled examples for {@link LogisticRegression}: one dense row of {@link Feature}
+ * values per health record, stored row after row in a single array, and a 0/1 label.
+ * A record is a positive example when a diagnosis was recorded on it.
+ */
+public final class TrainingSet {
+    private static final Set<String> NO_DIAGNOSIS = Set.of("", "none", "healthy", "normal", "n/a");
+
+    private final double[] features;
+    private final double[] labels;
+    private final int rows;
+
+    public TrainingSet(double[] features, double[] labels, int rows) {
+        if (features.length < (long) rows * Feature.COUNT || labels.length < rows) {
+            throw new IllegalArgumentException("Training set arrays are too short for " + rows + " rows");
+        }
+        this.features = features;
+        this.labels = labels;
+        this.rows = rows;
+    }
+
+    public int getRows() { return rows; }
+
+    public int getColumns() { return Feature.COUNT; }
+
+    public int getPositives() {
+        int positives = 0;
+        for (int r = 0; r < rows; r++) {
+            positives += (int) labels[r];
+        }
+        return positives;
+    }
+
+    /** Row {@code r} starts at {@code r * getColumns()}. */
+    double[] features() { return features; }
+
+    double[] labels() { return labels; }
+
+    public static boolean isPositive(HealthRecord record) {
+        String diagnosis = record.getDiagnosis();
+        return diagnosis != null && !NO_DIAGNOSIS.contains(diagnosis.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /** Collects rows; {@link #add} may be passed where a {@code BiConsumer} of patient and record is expected. */
+    public static final class Builder {
+        private double[] features = new double[1024 * Feature.COUNT];
+        private double[] labels = new double[1024];
+        private int rows;
+
+        /** The patient's age is taken on the record's date, so old records train on the age they were taken at. */
+        public void add(Patient patient, HealthRecord record) {
+            LocalDate taken = record.getRecordDate() != null ? record.getRecordDate() : LocalDate.now();
+            add(Feature.extract(patient, record, taken), isPositive(record));
+        }
+
+        public void add(double[] row, boolean positive) {
+            if (rows == labels.length) {
+                if ((long) rows * 2 * Feature.COUNT > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Training set is limited to " + rows + " rows");
+                }
+                labels = Arrays.copyOf(labels, rows * 2);
+                features = Arrays.copyOf(features, rows * 2 * Feature.COUNT);
+            }
+            System.arraycopy(row, 0, features, rows * Feature.COUNT, Feature.COUNT);
+            labels[rows++] = positive ? 1.0 : 0.0;
+        }
+
+        public TrainingSet build() {
+            return new TrainingSet(features, labels, rows);
+        }
+    }
+}
\ No newline at end of file
@@ -23,6 +23,8 @@ public class Appointment {
     private boolean isEmergency;
     private LocalDateTime createdDate;
     private LocalDateTime lastModified;
+    private int seriesId;
+    private double patientRating;
     
     public Appointment() {
         this.createdDate = LocalDateTime.now();
@@ -41,6 +43,29 @@ public class Appointment {
         this.appointmentType = appointmentType;
         this.appointmentDate = appointmentDate;
     }
+
+    public Appointment(Appointment other) {
+        this.appointmentId = other.appointmentId;
+        this.patientId = other.patientId;
+        this.patientName = other.patientName;
+        this.doctorName = other.doctorName;
+        this.doctorId = other.doctorId;
+        this.doctorSpecialization = other.doctorSpecialization;
+        this.appointmentType = other.appointmentType;
+        this.appointmentDate = other.appointmentDate;
+        this.durationMinutes = other.durationMinutes;
+        this.status = other.status;
+        this.notes = other.notes;
+        this.symptoms = other.symptoms;
+        this.diagnosis = other.diagnosis;
+        this.prescription = other.prescription;
+        this.consultationFee = other.consultationFee;
+        this.isEmergency = other.isEmergency;
+        this.createdDate = other.createdDate;
+        this.lastModified = other.lastModified;
+        this.seriesId = other.seriesId;
+        this.patientRating = other.patientRating;
+    }
     
     
     public int getAppointmentId() { return appointmentId; }
@@ -97,6 +122,18 @@ public class Appointment {
     public LocalDateTime getLastModified() { return lastModified; }
     public void setLastModified(LocalDateTime lastModified) { this.lastModified = lastModified; }
 
+    /** Id of the recurring series this appointment belongs to, or 0 for a one-off booking. */
+    public int getSeriesId() { return seriesId; }
+    public void setSeriesId(int seriesId) { this.seriesId = seriesId; }
+
+    /** The patient's rating of the visit, 1 to 5, or 0 if they gave none. */
+    public double getPatientRating() { return patientRating; }
+    public void setPatientRating(double patientRating) { this.patientRating = patientRating; }
+
+    public boolean isRecurring() {
+        return seriesId != 0;
+    }
+
     public String getFormattedDate() {
         if (appointmentDate != null) {
             return appointmentDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
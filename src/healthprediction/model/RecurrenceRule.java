@@ -0,0 +1,142 @@
+package com.healthprediction.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * How an appointment repeats, after iCalendar's RRULE: every {@code interval} days, weeks
+ * or months, optionally only on some weekdays, ending after {@code count} occurrences or on
+ * {@code until}, whichever comes first. The first occurrence is the start itself if it
+ * matches the rule.
+ */
+public class RecurrenceRule {
+
+    public enum Frequency { DAILY, WEEKLY, MONTHLY }
+
+    /** Upper bound on occurrences, so a rule without an end cannot expand forever. */
+    public static final int MAX_OCCURRENCES = 520;
+
+    private Frequency frequency;
+    private int interval;
+    private int count;
+    private LocalDate until;
+    private Set<DayOfWeek> weekdays;
+
+    public RecurrenceRule(Frequency frequency) {
+        this.frequency = frequency;
+        this.interval = 1;
+        this.weekdays = EnumSet.noneOf(DayOfWeek.class);
+    }
+
+    public Frequency getFrequency() { return frequency; }
+    public void setFrequency(Frequency frequency) { this.frequency = frequency; }
+
+    public int getInterval() { return interval; }
+    public void setInterval(int interval) { this.interval = interval; }
+
+    /** Number of occurrences, or 0 to end only on {@link #getUntil()}. */
+    public int getCount() { return count; }
+    public void setCount(int count) { this.count = count; }
+
+    /** Last date an occurrence may fall on (inclusive), or null. */
+    public LocalDate getUntil() { return until; }
+    public void setUntil(LocalDate until) { this.until = until; }
+
+    /** Weekdays to repeat on for daily and weekly rules; empty means the start's weekday for weekly rules. */
+    public Set<DayOfWeek> getWeekdays() { return weekdays; }
+    public void setWeekdays(Set<DayOfWeek> weekdays) {
+        this.weekdays = weekdays == null || weekdays.isEmpty() ? EnumSet.noneOf(DayOfWeek.class) : EnumSet.copyOf(weekdays);
+    }
+
+    /**
+     * The start times of every occurrence, in order, all at the start's time of day.
+     * Monthly occurrences on a day the month does not have (e.g. the 31st) are skipped.
+     *
+     * @throws IllegalArgumentException if the rule has no end, a non-positive interval,
+     *         or more than {@link #MAX_OCCURRENCES} occurrences
+     */
+    public List<LocalDateTime> occurrences(LocalDateTime start) {
+        if (frequency == null || interval < 1) {
+            throw new IllegalArgumentException("Recurrence needs a frequency and a positive interval: " + this);
+        }
+        if (count <= 0 && until == null) {
+            throw new IllegalArgumentException("Recurrence needs a count or an until date: " + this);
+        }
+        if (count > MAX_OCCURRENCES) {
+            throw new IllegalArgumentException("Recurrence may have at most " + MAX_OCCURRENCES + " occurrences: " + this);
+        }
+        List<LocalDateTime> result = new ArrayList<>();
+        LocalDate first = start.toLocalDate();
+        // Each period is one day, week or month. A daily rule on one weekday needs seven
+        // periods per occurrence; a rule whose weekdays never match stops after as many.
+        for (int period = 0; period < MAX_OCCURRENCES * 7; period++) {
+            for (LocalDate date : datesInPeriod(first, (long) period * interval)) {
+                if (date.isBefore(first)) {
+                    continue;
+                }
+                if (until != null && date.isAfter(until)) {
+                    return result;
+                }
+                if (result.size() == MAX_OCCURRENCES) {
+                    throw new IllegalArgumentException("Recurrence has more than " + MAX_OCCURRENCES + " occurrences: " + this);
+                }
+                result.add(date.atTime(start.toLocalTime()));
+                if (count > 0 && result.size() == count) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<LocalDate> datesInPeriod(LocalDate first, long offset) {
+        switch (frequency) {
+            case DAILY: {
+                LocalDate date = first.plusDays(offset);
+                return weekdays.isEmpty() || weekdays.contains(date.getDayOfWeek()) ? List.of(date) : List.of();
+            }
+            case WEEKLY: {
+                if (weekdays.isEmpty()) {
+                    return List.of(first.plusWeeks(offset));
+                }
+                LocalDate monday = first.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).plusWeeks(offset);
+                List<LocalDate> dates = new ArrayList<>(weekdays.size());
+                for (DayOfWeek weekday : weekdays) {
+                    dates.add(monday.plusDays(weekday.getValue() - 1L));
+                }
+                return dates;
+            }
+            default: {
+                LocalDate month = first.withDayOfMonth(1).plus(offset, ChronoUnit.MONTHS);
+                return first.getDayOfMonth() <= month.lengthOfMonth()
+                        ? List.of(month.withDayOfMonth(first.getDayOfMonth()))
+                        : List.of();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder rule = new StringBuilder("FREQ=").append(frequency).append(";INTERVAL=").append(interval);
+        if (count > 0) {
+            rule.append(";COUNT=").append(count);
+        }
+        if (until != null) {
+            rule.append(";UNTIL=").append(until);
+        }
+        if (!weekdays.isEmpty()) {
+            rule.append(";BYDAY=").append(weekdays.stream()
+                    .map(day -> day.name().substring(0, 2))
+                    .collect(Collectors.joining(",")));
+        }
+        return rule.toString();
+    }
+}
\ No newline at end of file
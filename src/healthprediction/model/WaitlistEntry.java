@@ -0,0 +1,111 @@
+package com.healthprediction.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A patient waiting for a freed appointment slot, either with one doctor or with any
+ * doctor of a specialization, at a time between {@code earliest} and {@code latest}.
+ * Emergencies come first, then higher priorities, then earlier registrations.
+ */
+public class WaitlistEntry {
+    private int waitlistId;
+    private int patientId;
+    private String patientName;
+    private int doctorId;
+    private String specialization;
+    private LocalDateTime earliest;
+    private LocalDateTime latest;
+    private int priority;
+    private boolean isEmergency;
+    private String appointmentType;
+    private int durationMinutes;
+    private LocalDateTime registeredDate;
+
+    public WaitlistEntry() {
+        this.registeredDate = LocalDateTime.now();
+        this.appointmentType = "Consultation";
+    }
+
+    public WaitlistEntry(int patientId, String patientName, LocalDateTime earliest, LocalDateTime latest) {
+        this();
+        this.patientId = patientId;
+        this.patientName = patientName;
+        this.earliest = earliest;
+        this.latest = latest;
+    }
+
+    public WaitlistEntry(WaitlistEntry other) {
+        this.waitlistId = other.waitlistId;
+        this.patientId = other.patientId;
+        this.patientName = other.patientName;
+        this.doctorId = other.doctorId;
+        this.specialization = other.specialization;
+        this.earliest = other.earliest;
+        this.latest = other.latest;
+        this.priority = other.priority;
+        this.isEmergency = other.isEmergency;
+        this.appointmentType = other.appointmentType;
+        this.durationMinutes = other.durationMinutes;
+        this.registeredDate = other.registeredDate;
+    }
+
+    public int getWaitlistId() { return waitlistId; }
+    public void setWaitlistId(int waitlistId) { this.waitlistId = waitlistId; }
+
+    public int getPatientId() { return patientId; }
+    public void setPatientId(int patientId) { this.patientId = patientId; }
+
+    public String getPatientName() { return patientName; }
+    public void setPatientName(String patientName) { this.patientName = patientName; }
+
+    /** The doctor wanted, or 0 for any doctor of {@link #getSpecialization()}. */
+    public int getDoctorId() { return doctorId; }
+    public void setDoctorId(int doctorId) { this.doctorId = doctorId; }
+
+    public String getSpecialization() { return specialization; }
+    public void setSpecialization(String specialization) { this.specialization = specialization; }
+
+    public LocalDateTime getEarliest() { return earliest; }
+    public void setEarliest(LocalDateTime earliest) { this.earliest = earliest; }
+
+    public LocalDateTime getLatest() { return latest; }
+    public void setLatest(LocalDateTime latest) { this.latest = latest; }
+
+    public int getPriority() { return priority; }
+    public void setPriority(int priority) { this.priority = priority; }
+
+    public boolean isEmergency() { return isEmergency; }
+    public void setEmergency(boolean emergency) { isEmergency = emergency; }
+
+    public String getAppointmentType() { return appointmentType; }
+    public void setAppointmentType(String appointmentType) { this.appointmentType = appointmentType; }
+
+    /** Length of the appointment wanted, or 0 for the length of the freed slot. */
+    public int getDurationMinutes() { return durationMinutes; }
+    public void setDurationMinutes(int durationMinutes) { this.durationMinutes = durationMinutes; }
+
+    public LocalDateTime getRegisteredDate() { return registeredDate; }
+    public void setRegisteredDate(LocalDateTime registeredDate) { this.registeredDate = registeredDate; }
+
+    /** Whether an appointment starting at {@code start} is within the wanted dates. */
+    public boolean accepts(LocalDateTime start) {
+        return (earliest == null || !start.isBefore(earliest)) && (latest == null || !start.isAfter(latest));
+    }
+
+    public boolean isExpired() {
+        return latest != null && latest.isBefore(LocalDateTime.now());
+    }
+
+    @Override
+    public String toString() {
+        return "WaitlistEntry{" +
+                "id=" + waitlistId +
+                ", patient='" + patientName + '\'' +
+                (doctorId != 0 ? ", doctorId=" + doctorId : ", specialization='" + specialization + '\'') +
+                ", from=" + earliest +
+                ", to=" + latest +
+                ", priority=" + priority +
+                (isEmergency ? ", emergency" : "") +
+                '}';
+    }
+}
\ No newline at end of file
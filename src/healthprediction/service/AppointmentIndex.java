@@ -0,0 +1,185 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory appointment store keyed by id, with secondary groupings by patient and by
+ * doctor so that per-id and per-person lookups do not scan every appointment, and a
+ * time-ordered index of the appointments that are still scheduled.
+ * Not thread-safe.
+ */
+class AppointmentIndex {
+
+    private static final long NOT_SCHEDULED = Long.MIN_VALUE;
+
+    // The keys an appointment was indexed under, so it can be unindexed even if the
+    // caller has since changed the patient, doctor, time or status on the same instance.
+    private static final class Entry {
+        final Appointment appointment;
+        final int patientId;
+        final int doctorId;
+        final long timeKey;
+
+        Entry(Appointment appointment) {
+            this.appointment = appointment;
+            this.patientId = appointment.getPatientId();
+            this.doctorId = appointment.getDoctorId();
+            this.timeKey = appointment.isScheduled() && appointment.getAppointmentDate() != null
+                    ? timeKey(appointment.getAppointmentDate(), appointment.getAppointmentId())
+                    : NOT_SCHEDULED;
+        }
+    }
+
+    private final IntObjectMap<Entry> byId;
+    private final IntObjectMap<List<Appointment>> byPatient = new IntObjectMap<>();
+    private final IntObjectMap<List<Appointment>> byDoctor = new IntObjectMap<>();
+    // Scheduled appointments keyed by (epoch minute << 32 | id): ordered by start time,
+    // unique per appointment.
+    private final TreeMap<Long, Appointment> scheduledByTime = new TreeMap<>();
+
+    AppointmentIndex() {
+        this.byId = new IntObjectMap<>();
+    }
+
+    AppointmentIndex(Collection<Appointment> appointments) {
+        this.byId = new IntObjectMap<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            put(appointment);
+        }
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    Appointment get(int appointmentId) {
+        Entry entry = byId.get(appointmentId);
+        return entry != null ? entry.appointment : null;
+    }
+
+    /**
+     * Adds the appointment, replacing (and unindexing) any appointment with the same id.
+     * Putting the same instance again re-indexes it after an in-place change such as
+     * a new status or time.
+     */
+    void put(Appointment appointment) {
+        Entry entry = new Entry(appointment);
+        Entry previous = byId.put(appointment.getAppointmentId(), entry);
+        if (previous != null) {
+            unlink(previous);
+        }
+        byPatient.computeIfAbsent(appointment.getPatientId(), id -> new ArrayList<>(4)).add(appointment);
+        byDoctor.computeIfAbsent(appointment.getDoctorId(), id -> new ArrayList<>()).add(appointment);
+        if (entry.timeKey != NOT_SCHEDULED) {
+            scheduledByTime.put(entry.timeKey, appointment);
+        }
+    }
+
+    Appointment remove(int appointmentId) {
+        Entry removed = byId.remove(appointmentId);
+        if (removed == null) {
+            return null;
+        }
+        unlink(removed);
+        return removed.appointment;
+    }
+
+    List<Appointment> forPatient(int patientId) {
+        return copyOf(byPatient.get(patientId));
+    }
+
+    List<Appointment> forDoctor(int doctorId) {
+        return copyOf(byDoctor.get(doctorId));
+    }
+
+    /**
+     * Scheduled appointments starting strictly after {@code from} and strictly before
+     * {@code to}, in start-time order.
+     */
+    List<Appointment> scheduledBetween(LocalDateTime from, LocalDateTime to) {
+        List<Appointment> result = new ArrayList<>();
+        if (!from.isBefore(to)) {
+            return result;
+        }
+        // Keys have minute resolution; the edge minutes are filtered exactly.
+        for (Appointment appointment : scheduledByTime.subMap(timeKey(from, 0), true, timeKey(to, -1), true).values()) {
+            LocalDateTime start = appointment.getAppointmentDate();
+            if (start.isAfter(from) && start.isBefore(to)) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Scheduled appointments starting strictly before {@code to}, in start-time order.
+     */
+    List<Appointment> scheduledBefore(LocalDateTime to) {
+        List<Appointment> result = new ArrayList<>();
+        for (Appointment appointment : scheduledByTime.headMap(timeKey(to, -1), true).values()) {
+            if (appointment.getAppointmentDate().isBefore(to)) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
+
+    int scheduledCount() {
+        return scheduledByTime.size();
+    }
+
+    void forEach(Consumer<? super Appointment> action) {
+        byId.forEachValue(entry -> action.accept(entry.appointment));
+    }
+
+    /** All appointments in id order, which is also creation order. */
+    List<Appointment> all() {
+        List<Appointment> all = new ArrayList<>(byId.size());
+        byId.forEachValue(entry -> all.add(entry.appointment));
+        all.sort(Comparator.comparingInt(Appointment::getAppointmentId));
+        return all;
+    }
+
+    private void unlink(Entry entry) {
+        unlink(byPatient, entry.patientId, entry.appointment);
+        unlink(byDoctor, entry.doctorId, entry.appointment);
+        if (entry.timeKey != NOT_SCHEDULED) {
+            scheduledByTime.remove(entry.timeKey);
+        }
+    }
+
+    // id -1 gives the largest key within the minute, since the id is stored as unsigned.
+    private static long timeKey(LocalDateTime dateTime, int appointmentId) {
+        long epochMinute = Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+        return (epochMinute << 32) | (appointmentId & 0xFFFFFFFFL);
+    }
+
+    private static List<Appointment> copyOf(List<Appointment> group) {
+        return group == null ? new ArrayList<>() : new ArrayList<>(group);
+    }
+
+    private static void unlink(IntObjectMap<List<Appointment>> groups, int key, Appointment appointment) {
+        List<Appointment> group = groups.get(key);
+        if (group == null) {
+            return;
+        }
+        for (int i = group.size() - 1; i >= 0; i--) {
+            if (group.get(i) == appointment) {
+                group.remove(i);
+                break;
+            }
+        }
+        if (group.isEmpty()) {
+            groups.remove(key);
+        }
+    }
+}
\ No newline at end of file
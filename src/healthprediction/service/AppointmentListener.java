@@ -0,0 +1,22 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+
+/**
+ * Receives every change to the appointments {@link AppointmentService} holds, in the order
+ * they are made for each doctor. Called while the service holds the doctor's lock, so
+ * implementations must be quick, thread-safe and must not call back into the service.
+ */
+public interface AppointmentListener {
+
+    /** The appointment was added or changed; {@code appointment} is its new state. */
+    void appointmentStored(Appointment appointment);
+
+    void appointmentDeleted(int appointmentId);
+
+    /**
+     * Everything known so far is stale. {@link #appointmentStored} follows for every
+     * scheduled appointment.
+     */
+    void appointmentsReloaded();
+}
\ No newline at end of file
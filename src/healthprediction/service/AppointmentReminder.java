@@ -0,0 +1,52 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * A notification about one scheduled appointment, delivered by {@link ReminderScheduler}
+ * when it falls due.
+ */
+public class AppointmentReminder {
+
+    public enum Kind {
+        DAY_BEFORE(Duration.ofHours(24)),
+        HOUR_BEFORE(Duration.ofHours(1)),
+        /** The appointment's time has come and it is still scheduled. */
+        OVERDUE(Duration.ZERO);
+
+        private final Duration lead;
+
+        Kind(Duration lead) {
+            this.lead = lead;
+        }
+
+        /** How long before the appointment this reminder falls due. */
+        public Duration getLead() { return lead; }
+    }
+
+    private final Kind kind;
+    private final Appointment appointment;
+    private final LocalDateTime due;
+
+    public AppointmentReminder(Kind kind, Appointment appointment, LocalDateTime due) {
+        this.kind = kind;
+        this.appointment = appointment;
+        this.due = due;
+    }
+
+    public Kind getKind() { return kind; }
+
+    public Appointment getAppointment() { return appointment; }
+
+    public LocalDateTime getDue() { return due; }
+
+    @Override
+    public String toString() {
+        return kind + " " + due + " appointment " + appointment.getAppointmentId() + ": " +
+               appointment.getPatientName() + " with " + appointment.getDoctorName() + " at " +
+               appointment.getAppointmentDate();
+    }
+}
\ No newline at end of file
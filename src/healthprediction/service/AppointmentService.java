@@ -3,22 +3,93 @@ package com.healthprediction.service;
 import com.healthprediction.model.Appointment;
 import com.healthprediction.model.Patient; 
 import com.healthprediction.model.Doctor; 
+import com.healthprediction.model.RecurrenceRule;
 
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * In-memory view of appointments, safe for concurrent use. Mutations for one doctor are
+ * serialized by that doctor's lock stripe, so bookings for different doctors never wait
+ * on each other while checking availability or persisting. The shared indexes are only
+ * held under a short StampedLock write section; point lookups use optimistic reads and
+ * {@link #getAllAppointments()} hands out an immutable snapshot that is rebuilt once per change.
+ * Stored Appointment instances are never mutated; a change replaces the instance.
+ *
+ * <p>Only appointments inside an {@link AppointmentWindow} around today (by default 30 days
+ * back to 180 days ahead, plus overdue ones) are resident. The window slides at midnight.
+ * Older and later appointments are read from the database when asked for and kept in a
+ * small LRU cache; the statistics still cover them through grouped counts.
+ *
+ * <p>Every scheduled appointment, resident or not, has reminders a day and an hour ahead
+ * and an overdue flag at its time in a {@link ReminderScheduler}, kept in step with each
+ * booking, cancellation and reschedule. They go to the log, or to the file named by
+ * {@code healthprediction.reminders.file}, unless another sink is set.
+ */
 public class AppointmentService {
-    private DatabaseService dbService;
-    private List<Appointment> appointments;
-    private int nextAppointmentId;
+    private static final int DOCTOR_STRIPES = 64;
+    private static final int WINDOW_PAST_DAYS = Integer.getInteger("healthprediction.appointments.windowPastDays", 30);
+    private static final int WINDOW_FUTURE_DAYS = Integer.getInteger("healthprediction.appointments.windowFutureDays", 180);
+    private static final int HISTORY_CACHE_SIZE = Integer.getInteger("healthprediction.appointments.historyCacheSize", 500);
+
+    private final DatabaseService dbService;
+    private final StampedLock stateLock = new StampedLock();
+    private final ReentrantLock[] doctorStripes = new ReentrantLock[DOCTOR_STRIPES];
+    private final Object refreshLock = new Object();
+    private AppointmentIndex appointments;
+    private AppointmentStatistics statistics;
+    private volatile AppointmentWindow window;
+    private volatile SchedulingEngine scheduling;
+    private volatile List<Appointment> snapshot;
+    private final Map<Integer, Appointment> history = Collections.synchronizedMap(
+            new LinkedHashMap<Integer, Appointment>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Appointment> eldest) {
+                    return size() > HISTORY_CACHE_SIZE;
+                }
+            });
+    private final ScheduledExecutorService windowSlider;
+    private final ReminderScheduler reminders;
+    private final List<Consumer<Appointment>> cancellationListeners = new CopyOnWriteArrayList<>();
+    private final List<AppointmentListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextAppointmentId = new AtomicInteger(1);
+    private volatile AppointmentWriteQueue writeQueue;
+    private long changeCursor;
     
     public AppointmentService() {
         this.dbService = DatabaseService.getInstance();
-        this.appointments = new ArrayList<>();
-        this.nextAppointmentId = 1;
+        for (int i = 0; i < DOCTOR_STRIPES; i++) {
+            doctorStripes[i] = new ReentrantLock();
+        }
+        this.appointments = new AppointmentIndex();
+        this.statistics = new AppointmentStatistics();
+        this.window = currentWindow();
+        this.scheduling = newSchedulingEngine();
+        String reminderFile = System.getProperty("healthprediction.reminders.file");
+        this.reminders = new ReminderScheduler(reminderFile != null
+                ? ReminderSink.appendingTo(Paths.get(reminderFile))
+                : ReminderSink.log());
+        this.windowSlider = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "appointment-window");
+            thread.setDaemon(true);
+            return thread;
+        });
         initializeSampleAppointments(); 
+        scheduleWindowSlide();
     }
     
     private void initializeSampleAppointments() {
@@ -74,104 +145,790 @@ public class AppointmentService {
         loadAppointmentsFromDatabase();
     }
 
+    /**
+     * Switches appointment mutations to write-behind: the in-memory state is updated
+     * immediately and the database write is queued for a background writer.
+     */
+    public synchronized void enableWriteBehind(AppointmentWriteQueue.Durability durability, long flushIntervalMillis) {
+        if (writeQueue != null) {
+            writeQueue.close();
+        }
+        writeQueue = new AppointmentWriteQueue(dbService, durability, flushIntervalMillis);
+    }
+
+    /**
+     * Blocks until every queued appointment write has reached the database.
+     * Does nothing when write-behind is not enabled.
+     */
+    public void flush() {
+        AppointmentWriteQueue queue = writeQueue;
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    /** Where appointment reminders and overdue flags are delivered from now on. */
+    public void setReminderSink(ReminderSink sink) {
+        reminders.setSink(sink);
+    }
+
+    /**
+     * Calls {@code listener} with each appointment this service cancels, after the
+     * cancellation is stored and without holding any of the service's locks.
+     */
+    public void addCancellationListener(Consumer<Appointment> listener) {
+        cancellationListeners.add(listener);
+    }
+
+    /**
+     * Registers {@code listener} for every appointment change from now on. It is first
+     * told about every scheduled appointment, resident or not, so it starts complete.
+     */
+    public void addAppointmentListener(AppointmentListener listener) {
+        synchronized (refreshLock) {
+            lockAllStripes();
+            try {
+                flush();
+                readLocked(() -> appointments.all()).stream()
+                        .filter(Appointment::isScheduled)
+                        .forEach(listener::appointmentStored);
+                dbService.streamAppointmentsWithStatusBetween("Scheduled", window.getEnd(), LocalDateTime.MAX,
+                                                              listener::appointmentStored);
+            } catch (SQLException e) {
+                System.err.println("Error loading scheduled appointments for listener: " + e.getMessage());
+            } finally {
+                listeners.add(listener);
+                unlockAllStripes();
+            }
+        }
+    }
+
+    public synchronized void shutdown() {
+        windowSlider.shutdownNow();
+        reminders.shutdown();
+        if (writeQueue != null) {
+            writeQueue.close();
+            writeQueue = null;
+        }
+    }
+
     public void loadAppointmentsFromDatabase() {
+        synchronized (refreshLock) {
+            lockAllStripes();
+            try {
+                flush();
+                // Cursor first: changes that land during the load are applied again, which is harmless.
+                long cursor = dbService.getLatestChangeSeq();
+                AppointmentWindow loadedWindow = currentWindow();
+                List<Appointment> loaded = dbService.getAppointmentsBetween(loadedWindow.getStart(), loadedWindow.getEnd());
+                dbService.streamAppointmentsWithStatusBetween("Scheduled", LocalDateTime.MIN, loadedWindow.getStart(), loaded::add);
+                SchedulingEngine engine = newSchedulingEngine();
+                loaded.forEach(engine::track);
+                reminders.clear();
+                loaded.forEach(reminders::schedule);
+                listeners.forEach(AppointmentListener::appointmentsReloaded);
+                loaded.stream().filter(Appointment::isScheduled).forEach(this::notifyStored);
+                // Bookings past the window are not kept, but still block their slots and get reminders.
+                dbService.streamAppointmentsWithStatusBetween("Scheduled", loadedWindow.getEnd(), LocalDateTime.MAX, appointment -> {
+                    engine.track(appointment);
+                    reminders.schedule(appointment);
+                    notifyStored(appointment);
+                });
+                AppointmentIndex index = new AppointmentIndex(loaded);
+                AppointmentStatistics stats = loadStatistics(loadedWindow, loaded);
+                int highWaterMark = dbService.getAppointmentIdHighWaterMark();
+                write(() -> {
+                    this.appointments = index;
+                    this.statistics = stats;
+                    this.window = loadedWindow;
+                    this.scheduling = engine;
+                });
+                history.clear();
+                this.changeCursor = cursor;
+                nextAppointmentId.accumulateAndGet(highWaterMark + 1, Math::max);
+                System.out.println("Loaded " + loaded.size() + " appointments for window " + loadedWindow);
+            } catch (Exception e) {
+                System.err.println("Error loading appointments from database: " + e.getMessage());
+                reminders.clear();
+                listeners.forEach(AppointmentListener::appointmentsReloaded);
+                write(() -> {
+                    this.appointments = new AppointmentIndex();
+                    this.statistics = new AppointmentStatistics();
+                    this.scheduling = newSchedulingEngine();
+                });
+            } finally {
+                unlockAllStripes();
+            }
+        }
+    }
+
+    // Resident appointments are tracked by id; everything else is counted from grouped rows.
+    private AppointmentStatistics loadStatistics(AppointmentWindow residentWindow, Collection<Appointment> resident) throws SQLException {
+        AppointmentStatistics stats = new AppointmentStatistics(resident);
+        dbService.streamAppointmentHistorySummaries(residentWindow.getStart(), residentWindow.getEnd(), stats::addHistory);
+        return stats;
+    }
+
+    private SchedulingEngine newSchedulingEngine() {
+        SchedulingEngine engine = new SchedulingEngine();
+        engine.registerDoctors(dbService.getAllDoctors());
+        return engine;
+    }
+
+    private static AppointmentWindow currentWindow() {
+        return AppointmentWindow.around(LocalDate.now(), WINDOW_PAST_DAYS, WINDOW_FUTURE_DAYS);
+    }
+
+    private void scheduleWindowSlide() {
+        Duration untilMidnight = Duration.between(LocalDateTime.now(), LocalDate.now().plusDays(1).atStartOfDay());
         try {
-            this.appointments = dbService.getAllAppointments();
-            if (!this.appointments.isEmpty()) {
-                this.nextAppointmentId = this.appointments.stream()
-                                            .mapToInt(Appointment::getAppointmentId)
-                                            .max().orElse(0) + 1;
+            windowSlider.schedule(() -> {
+                slideWindow();
+                scheduleWindowSlide();
+            }, untilMidnight.toMillis() + 1, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down.
+        }
+    }
+
+    /**
+     * Moves the resident window to today: appointments that fell out of it are dropped
+     * from memory and counted as history, and those that came into it are loaded.
+     */
+    public void slideWindow() {
+        synchronized (refreshLock) {
+            lockAllStripes();
+            try {
+                flush();
+                AppointmentWindow previous = window;
+                AppointmentWindow next = currentWindow();
+                if (next.sameAs(previous)) {
+                    return;
+                }
+                if (next.getStart().isBefore(previous.getStart())) {
+                    // Clock moved back; history would have to come back in. Rare enough to reload.
+                    loadAppointmentsFromDatabase();
+                    return;
+                }
+                LocalDateTime enteringFrom = previous.getEnd().isAfter(next.getStart()) ? previous.getEnd() : next.getStart();
+                List<Appointment> entering = enteringFrom.isBefore(next.getEnd())
+                        ? dbService.getAppointmentsBetween(enteringFrom, next.getEnd())
+                        : List.of();
+                List<Appointment> leaving = new ArrayList<>();
+                readLocked(() -> {
+                    appointments.forEach(appointment -> {
+                        if (!next.contains(appointment)) {
+                            leaving.add(appointment);
+                        }
+                    });
+                    return null;
+                });
+                write(() -> {
+                    for (Appointment appointment : leaving) {
+                        appointments.remove(appointment.getAppointmentId());
+                        statistics.remove(appointment.getAppointmentId());
+                        statistics.countHistory(appointment);
+                    }
+                    for (Appointment appointment : entering) {
+                        if (appointments.get(appointment.getAppointmentId()) == null) {
+                            statistics.uncountHistory(appointment);
+                            appointments.put(appointment);
+                            statistics.record(appointment);
+                        }
+                    }
+                    this.window = next;
+                });
+                leaving.forEach(appointment -> history.put(appointment.getAppointmentId(), appointment));
+                entering.forEach(appointment -> history.remove(appointment.getAppointmentId()));
+                System.out.println("Appointment window moved to " + next + ": " + entering.size() + " loaded, " +
+                                   leaving.size() + " moved to history");
+            } catch (Exception e) {
+                System.err.println("Error moving appointment window: " + e.getMessage());
+            } finally {
+                unlockAllStripes();
+            }
+        }
+    }
+
+    /**
+     * Brings the in-memory appointments up to date with the database by applying the
+     * change log since the last load or refresh. Falls back to a full reload only if
+     * the change log has been compacted past this service's cursor.
+     */
+    public void refreshFromDatabase() {
+        synchronized (refreshLock) {
+            // No local mutation may interleave with re-reading rows it is about to change.
+            lockAllStripes();
+            try {
+                flush();
+                long oldest = dbService.getOldestChangeSeq();
+                if (oldest > changeCursor + 1) {
+                    System.out.println("Change log compacted past seq " + changeCursor + ", reloading all appointments");
+                    loadAppointmentsFromDatabase();
+                    return;
+                }
+                int applied = 0;
+                List<ChangeLogEntry> changes;
+                while (!(changes = dbService.pollChanges(changeCursor)).isEmpty()) {
+                    applied += applyChanges(changes);
+                    changeCursor = changes.get(changes.size() - 1).getSeq();
+                }
+                if (applied > 0) {
+                    System.out.println("Applied " + applied + " appointment changes up to seq " + changeCursor);
+                }
+            } catch (Exception e) {
+                System.err.println("Error refreshing appointments from change log: " + e.getMessage());
+            } finally {
+                unlockAllStripes();
+            }
+        }
+    }
+
+    private int applyChanges(List<ChangeLogEntry> changes) throws SQLException {
+        // Only the last operation per row matters; surviving rows are re-read in one query.
+        Map<Integer, ChangeLogEntry.Operation> latest = new LinkedHashMap<>();
+        Set<Integer> inserted = new HashSet<>();
+        for (ChangeLogEntry change : changes) {
+            if ("appointments".equals(change.getTableName())) {
+                if (!latest.containsKey(change.getRowId()) && change.getOperation() == ChangeLogEntry.Operation.INSERT) {
+                    inserted.add(change.getRowId());
+                }
+                latest.put(change.getRowId(), change.getOperation());
+            }
+        }
+        if (latest.isEmpty()) {
+            return 0;
+        }
+        Set<Integer> deleted = new HashSet<>();
+        List<Integer> changed = new ArrayList<>();
+        latest.forEach((id, op) -> {
+            if (op == ChangeLogEntry.Operation.DELETE) {
+                deleted.add(id);
             } else {
-                this.nextAppointmentId = 1;
+                changed.add(id);
             }
-        } catch (Exception e) {
-            System.err.println("Error loading appointments from database: " + e.getMessage());
-            this.appointments = new ArrayList<>(); 
+        });
+        Map<Integer, Appointment> rows = dbService.getAppointmentsByIds(changed);
+        // A row that no longer exists was deleted by a change later in the log.
+        changed.stream().filter(id -> !rows.containsKey(id)).forEach(deleted::add);
+        SchedulingEngine engine = scheduling;
+        for (Appointment row : rows.values()) {
+            engine.track(row);
+            nextAppointmentId.accumulateAndGet(row.getAppointmentId() + 1, Math::max);
         }
+        for (int id : deleted) {
+            engine.release(id);
+        }
+        // What a non-resident row was counted as is unknown, except for a row first inserted
+        // in this batch that lands in the window. Anything else touching history means
+        // recounting it; history edits are rare.
+        AppointmentWindow current = window;
+        boolean historyChanged = latest.keySet().stream()
+                .anyMatch(id -> getResident(id) == null
+                        && !(inserted.contains(id) && rows.containsKey(id) && current.contains(rows.get(id))));
+        for (Appointment row : rows.values()) {
+            store(null, row);
+        }
+        for (int id : deleted) {
+            store(null, id, null);
+        }
+        if (historyChanged) {
+            List<Appointment> resident = readLocked(() -> appointments.all());
+            AppointmentStatistics recounted = loadStatistics(window, resident);
+            write(() -> this.statistics = recounted);
+        }
+        return latest.size();
     }
 
+    /**
+     * Books the appointment.
+     *
+     * @throws IllegalStateException if the doctor is not available at that time or the
+     *         appointment could not be saved
+     */
     public void addAppointment(Appointment appointment) {
+        Appointment stored = new Appointment(appointment);
+        ReentrantLock stripe = stripeFor(stored.getDoctorId());
+        stripe.lock();
+        try {
+            int id = nextAppointmentId.getAndIncrement();
+            appointment.setAppointmentId(id);
+            stored.setAppointmentId(id);
+            ensureDoctorKnown(stored.getDoctorId());
+            scheduling.reserve(stored);
+            try {
+                AppointmentWriteQueue queue = writeQueue;
+                if (queue != null) {
+                    queue.enqueueInsert(stored);
+                } else {
+                    dbService.saveAppointment(stored);
+                }
+                store(null, stored);
+                System.out.println("Appointment added: " + stored);
+            } catch (Exception e) {
+                scheduling.release(id);
+                System.err.println("Error adding appointment: " + e.getMessage());
+                throw new IllegalStateException("Could not save appointment: " + e.getMessage(), e);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Books every occurrence of {@code rule}, starting at the template's date and time, as
+     * one series with the template's doctor. All occurrences are checked against the
+     * doctor's calendar in one pass and saved in one batched transaction; either the whole
+     * series is booked or none of it.
+     *
+     * @return copies of the booked occurrences, whose series id is the first occurrence's id
+     * @throws IllegalArgumentException if the rule has no end or too many occurrences
+     * @throws IllegalStateException if any occurrence is not available or the series could not be saved
+     */
+    public List<Appointment> addRecurringAppointments(Appointment template, RecurrenceRule rule) {
+        if (template.getAppointmentDate() == null) {
+            throw new IllegalStateException("Appointment has no date and time");
+        }
+        List<LocalDateTime> starts = rule.occurrences(template.getAppointmentDate());
+        if (starts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ReentrantLock stripe = stripeFor(template.getDoctorId());
+        stripe.lock();
+        try {
+            int firstId = nextAppointmentId.getAndAdd(starts.size());
+            List<Appointment> series = new ArrayList<>(starts.size());
+            for (int i = 0; i < starts.size(); i++) {
+                Appointment occurrence = new Appointment(template);
+                occurrence.setAppointmentId(firstId + i);
+                occurrence.setSeriesId(firstId);
+                occurrence.setAppointmentDate(starts.get(i));
+                occurrence.setStatus("Scheduled");
+                series.add(occurrence);
+            }
+            ensureDoctorKnown(template.getDoctorId());
+            scheduling.reserveAll(series);
+            try {
+                AppointmentWriteQueue queue = writeQueue;
+                if (queue != null) {
+                    queue.enqueueInserts(series);
+                } else {
+                    dbService.saveAppointmentSeries(series);
+                }
+                List<Appointment> booked = new ArrayList<>(series.size());
+                for (Appointment occurrence : series) {
+                    store(null, occurrence);
+                    booked.add(new Appointment(occurrence));
+                }
+                System.out.println("Recurring appointment series " + firstId + " added: " + rule + ", " + series.size() + " occurrences");
+                return booked;
+            } catch (Exception e) {
+                series.forEach(occurrence -> scheduling.release(occurrence.getAppointmentId()));
+                System.err.println("Error adding recurring appointments: " + e.getMessage());
+                throw new IllegalStateException("Could not save appointment series: " + e.getMessage(), e);
+            }
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Cancels every occurrence of the series that is still scheduled, in one transaction.
+     * Past occurrences that were completed or cancelled are left as they are.
+     *
+     * @return the number of occurrences cancelled
+     */
+    public int cancelSeries(int seriesId) {
+        List<Appointment> cancelledOccurrences = new ArrayList<>();
+        // Occurrences may have been moved to other doctors; a series cancel is rare enough to stop all bookings briefly.
+        lockAllStripes();
         try {
-            appointment.setAppointmentId(nextAppointmentId++);
-            dbService.saveAppointment(appointment);
-            this.appointments.add(appointment);
-            System.out.println("Appointment added: " + appointment);
+            flush();
+            List<Appointment> pending = new ArrayList<>();
+            for (Appointment stored : dbService.getAppointmentsInSeries(seriesId)) {
+                Appointment resident = getResident(stored.getAppointmentId());
+                Appointment previous = resident != null ? resident : stored;
+                if (previous.isScheduled()) {
+                    pending.add(previous);
+                }
+            }
+            if (pending.isEmpty()) {
+                return 0;
+            }
+            List<Integer> ids = new ArrayList<>(pending.size());
+            pending.forEach(appointment -> ids.add(appointment.getAppointmentId()));
+            AppointmentWriteQueue queue = writeQueue;
+            if (queue != null) {
+                queue.enqueueStatusChanges(ids, "Cancelled");
+            } else {
+                dbService.updateAppointmentStatuses(ids, "Cancelled");
+            }
+            for (Appointment previous : pending) {
+                Appointment cancelled = new Appointment(previous);
+                cancelled.setStatus("Cancelled");
+                scheduling.release(previous.getAppointmentId());
+                store(previous, cancelled);
+                cancelledOccurrences.add(cancelled);
+            }
+            System.out.println("Appointment series " + seriesId + " cancelled: " + pending.size() + " occurrences");
+            return pending.size();
         } catch (Exception e) {
-            System.err.println("Error adding appointment: " + e.getMessage());
+            System.err.println("Error cancelling appointment series " + seriesId + ": " + e.getMessage());
+            return 0;
+        } finally {
+            unlockAllStripes();
+            cancelledOccurrences.forEach(this::notifyCancelled);
+        }
+    }
+
+    /**
+     * Earliest free slots with one doctor, within working hours and clear of bookings.
+     */
+    public List<SchedulingEngine.Slot> findNextAvailableSlots(int doctorId, int durationMinutes, LocalDateTime from, int count) {
+        ensureDoctorKnown(doctorId);
+        return scheduling.findNextAvailableSlots(doctorId, durationMinutes, from, count);
+    }
+
+    /**
+     * Earliest free slots across all doctors of a specialization.
+     */
+    public List<SchedulingEngine.Slot> findNextAvailableSlots(String specialization, int durationMinutes, LocalDateTime from, int count) {
+        return scheduling.findNextAvailableSlots(specialization, durationMinutes, from, count);
+    }
+
+    // Doctors added after the service started are picked up on first use.
+    /** Ids of the booked appointments with the same doctor that overlap {@code appointment}'s time. */
+    public List<Integer> getOverlappingAppointmentIds(Appointment appointment) {
+        return scheduling.overlapping(appointment);
+    }
+
+    private void ensureDoctorKnown(int doctorId) {
+        SchedulingEngine engine = scheduling;
+        if (engine.hasDoctor(doctorId)) {
+            return;
+        }
+        try {
+            Doctor doctor = dbService.getDoctorById(doctorId);
+            if (doctor != null) {
+                engine.registerDoctor(doctor);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error loading doctor " + doctorId + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Looks in memory first, then in the history cache, then in the database.
+     */
     public Appointment getAppointmentById(int id) {
-        return appointments.stream()
-                .filter(apt -> apt.getAppointmentId() == id)
-                .findFirst()
-                .orElse(null);
+        Appointment resident = getResident(id);
+        if (resident != null) {
+            return resident;
+        }
+        Appointment cached = history.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            flush();
+            Appointment loaded = dbService.getAppointmentById(id);
+            if (loaded != null && !window.contains(loaded)) {
+                history.put(id, loaded);
+            }
+            return loaded;
+        } catch (SQLException e) {
+            System.err.println("Error loading appointment " + id + ": " + e.getMessage());
+            return null;
+        }
     }
 
+    private Appointment getResident(int id) {
+        return read(() -> appointments.get(id));
+    }
+
+    /**
+     * Immutable snapshot of the resident appointments in id order. Repeated calls between
+     * changes return the same list without copying.
+     */
     public List<Appointment> getAllAppointments() {
-        
-        
-        return new ArrayList<>(appointments); 
+        List<Appointment> current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        long stamp = stateLock.readLock();
+        try {
+            current = snapshot;
+            if (current == null) {
+                current = Collections.unmodifiableList(appointments.all());
+                snapshot = current;
+            }
+            return current;
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
     }
 
+    /** All of the patient's appointments, including history outside the resident window. */
     public List<Appointment> getAppointmentsForPatient(int patientId) {
-        return appointments.stream()
-                .filter(apt -> apt.getPatientId() == patientId)
-                .collect(Collectors.toList());
+        flush();
+        return withHistory(readLocked(() -> appointments.forPatient(patientId)),
+                           dbService.getAppointmentsForPatient(patientId));
     }
 
+    /** All of the doctor's appointments, including history outside the resident window. */
     public List<Appointment> getAppointmentsForDoctor(int doctorId) {
-        return appointments.stream()
-                .filter(apt -> apt.getDoctorId() == doctorId)
-                .collect(Collectors.toList());
+        flush();
+        return withHistory(readLocked(() -> appointments.forDoctor(doctorId)),
+                           dbService.getAppointmentsForDoctor(doctorId));
     }
 
-    public void updateAppointment(Appointment appointment) {
-        try {
-            dbService.updateAppointment(appointment); 
-            
-            appointments.replaceAll(apt -> apt.getAppointmentId() == appointment.getAppointmentId() ? appointment : apt);
-            System.out.println("Appointment updated: " + appointment);
-        } catch (Exception e) {
-            System.err.println("Error updating appointment: " + e.getMessage());
+    private List<Appointment> withHistory(List<Appointment> resident, List<Appointment> stored) {
+        Set<Integer> residentIds = new HashSet<>();
+        resident.forEach(appointment -> residentIds.add(appointment.getAppointmentId()));
+        List<Appointment> result = new ArrayList<>(resident);
+        for (Appointment appointment : stored) {
+            if (!residentIds.contains(appointment.getAppointmentId())) {
+                result.add(appointment);
+                history.put(appointment.getAppointmentId(), appointment);
+            }
         }
+        result.sort(Comparator.comparingInt(Appointment::getAppointmentId));
+        return result;
     }
 
-    public void cancelAppointment(int appointmentId) {
-        try {
-            dbService.updateAppointmentStatus(appointmentId, "Cancelled"); 
-            Appointment apt = getAppointmentById(appointmentId);
-            if (apt != null) {
-                apt.setStatus("Cancelled"); 
-                System.out.println("Appointment " + appointmentId + " cancelled.");
+    /**
+     * @return false if the change could not be saved, in which case nothing changed
+     * @throws IllegalStateException if a scheduled appointment's new time is not available
+     */
+    public boolean updateAppointment(Appointment appointment) {
+        Appointment stored = new Appointment(appointment);
+        int id = stored.getAppointmentId();
+        while (true) {
+            Appointment current = getAppointmentById(id);
+            int previousDoctorId = current != null ? current.getDoctorId() : stored.getDoctorId();
+            // Both doctors' stripes when the appointment moves, in stripe order like
+            // lockAllStripes(), and only once when both doctors share a stripe.
+            int previousStripe = stripeIndex(previousDoctorId);
+            int newStripe = stripeIndex(stored.getDoctorId());
+            ReentrantLock first = doctorStripes[Math.min(previousStripe, newStripe)];
+            ReentrantLock second = previousStripe != newStripe ? doctorStripes[Math.max(previousStripe, newStripe)] : null;
+            first.lock();
+            if (second != null) {
+                second.lock();
             }
-        } catch (Exception e) {
-            System.err.println("Error cancelling appointment: " + e.getMessage());
+            try {
+                Appointment previous = getAppointmentById(id);
+                if (previous != null && previous.getDoctorId() != previousDoctorId) {
+                    continue;
+                }
+                if (!stored.isScheduled()) {
+                    scheduling.release(id);
+                } else if (movesSlot(previous, stored)) {
+                    // An edit that keeps the slot (e.g. notes only) is not re-validated, so
+                    // existing out-of-hours bookings stay editable.
+                    ensureDoctorKnown(stored.getDoctorId());
+                    scheduling.reserve(stored);
+                }
+                try {
+                    AppointmentWriteQueue queue = writeQueue;
+                    if (queue != null) {
+                        queue.enqueueUpdate(stored);
+                    } else {
+                        dbService.updateAppointment(stored); 
+                    }
+                    store(previous, stored);
+                    System.out.println("Appointment updated: " + stored);
+                    return true;
+                } catch (Exception e) {
+                    if (previous != null) {
+                        scheduling.track(previous);
+                    } else {
+                        scheduling.release(id);
+                    }
+                    System.err.println("Error updating appointment: " + e.getMessage());
+                    return false;
+                }
+            } finally {
+                if (second != null) {
+                    second.unlock();
+                }
+                first.unlock();
+            }
+        }
+    }
+
+    private static boolean movesSlot(Appointment previous, Appointment updated) {
+        return previous == null
+                || !previous.isScheduled()
+                || previous.getDoctorId() != updated.getDoctorId()
+                || !Objects.equals(previous.getAppointmentDate(), updated.getAppointmentDate())
+                || previous.getDurationMinutes() != updated.getDurationMinutes();
+    }
+
+    /**
+     * @return false if the appointment is not known here or the change could not be saved
+     */
+    public boolean cancelAppointment(int appointmentId) {
+        Appointment cancelled = changeStatus(appointmentId, "Cancelled");
+        if (cancelled == null) {
+            return false;
         }
+        System.out.println("Appointment " + appointmentId + " cancelled.");
+        notifyCancelled(cancelled);
+        return true;
     }
 
     public void completeAppointment(int appointmentId) {
-        try {
-            dbService.updateAppointmentStatus(appointmentId, "Completed"); 
-            Appointment apt = getAppointmentById(appointmentId);
-            if (apt != null) {
-                apt.setStatus("Completed"); 
-                System.out.println("Appointment " + appointmentId + " marked as completed.");
+        if (changeStatus(appointmentId, "Completed") != null) {
+            System.out.println("Appointment " + appointmentId + " marked as completed.");
+        }
+    }
+
+    /**
+     * Marks the appointment completed with the patient's rating of the visit, which
+     * listeners such as {@link DoctorLoadService} fold into the doctor's rating.
+     *
+     * @return false if the appointment is unknown or the change could not be saved
+     * @throws IllegalArgumentException if the rating is not above 0 and at most 5
+     */
+    public boolean completeAppointment(int appointmentId, double patientRating) {
+        if (!(patientRating > 0 && patientRating <= 5)) {
+            throw new IllegalArgumentException("Rating must be above 0 and at most 5: " + patientRating);
+        }
+        Appointment current = getAppointmentById(appointmentId);
+        if (current == null) {
+            return false;
+        }
+        Appointment completed = new Appointment(current);
+        completed.setStatus("Completed");
+        completed.setPatientRating(patientRating);
+        if (!updateAppointment(completed)) {
+            return false;
+        }
+        System.out.println("Appointment " + appointmentId + " marked as completed, rated " + patientRating + ".");
+        return true;
+    }
+
+    private void notifyCancelled(Appointment cancelled) {
+        for (Consumer<Appointment> listener : cancellationListeners) {
+            try {
+                listener.accept(new Appointment(cancelled));
+            } catch (RuntimeException e) {
+                System.err.println("Error in cancellation listener for appointment " + cancelled.getAppointmentId() + ": " + e.getMessage());
             }
-        } catch (Exception e) {
-            System.err.println("Error completing appointment: " + e.getMessage());
         }
     }
 
-    
+    // The changed appointment, or null if it is not known in memory or could not be changed.
+    private Appointment changeStatus(int appointmentId, String status) {
+        while (true) {
+            Appointment current = getAppointmentById(appointmentId);
+            if (current == null) {
+                try {
+                    persistStatus(appointmentId, status);
+                } catch (Exception e) {
+                    System.err.println("Error changing appointment " + appointmentId + " to " + status + ": " + e.getMessage());
+                }
+                return null;
+            }
+            ReentrantLock stripe = stripeFor(current.getDoctorId());
+            stripe.lock();
+            try {
+                Appointment previous = getAppointmentById(appointmentId);
+                // Gone or moved to another doctor in the meantime: retry under the right stripe.
+                if (previous == null || previous.getDoctorId() != current.getDoctorId()) {
+                    continue;
+                }
+                persistStatus(appointmentId, status);
+                Appointment changed = new Appointment(previous);
+                changed.setStatus(status);
+                scheduling.release(appointmentId);
+                store(previous, changed);
+                return changed;
+            } catch (Exception e) {
+                System.err.println("Error changing appointment " + appointmentId + " to " + status + ": " + e.getMessage());
+                return null;
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+
+    private void persistStatus(int appointmentId, String status) throws Exception {
+        AppointmentWriteQueue queue = writeQueue;
+        if (queue != null) {
+            queue.enqueueStatusChange(appointmentId, status);
+        } else {
+            dbService.updateAppointmentStatus(appointmentId, status);
+        }
+    }
+
+    private void store(Appointment previous, Appointment current) {
+        store(previous, current.getAppointmentId(), current);
+    }
+
+    /**
+     * Replaces one appointment's in-memory state: resident if it falls in the window,
+     * otherwise history. {@code previous} is what a non-resident appointment was counted
+     * as (null if it is new); {@code current} is null if it was deleted.
+     * Callers hold the appointment's doctor stripe or all stripes.
+     */
+    private void store(Appointment previous, int id, Appointment current) {
+        boolean resident = current != null && window.contains(current);
+        write(() -> {
+            if (appointments.remove(id) != null) {
+                statistics.remove(id);
+            } else if (previous != null) {
+                statistics.uncountHistory(previous);
+            }
+            if (resident) {
+                appointments.put(current);
+                statistics.record(current);
+            } else if (current != null) {
+                statistics.countHistory(current);
+            }
+        });
+        if (resident || current == null) {
+            history.remove(id);
+        } else {
+            history.put(id, current);
+        }
+        if (current != null) {
+            reminders.schedule(current);
+            notifyStored(current);
+        } else {
+            reminders.cancel(id);
+            for (AppointmentListener listener : listeners) {
+                try {
+                    listener.appointmentDeleted(id);
+                } catch (RuntimeException e) {
+                    System.err.println("Error in appointment listener for appointment " + id + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // A failing listener must not undo a change that is already stored.
+    private void notifyStored(Appointment appointment) {
+        for (AppointmentListener listener : listeners) {
+            try {
+                listener.appointmentStored(appointment);
+            } catch (RuntimeException e) {
+                System.err.println("Error in appointment listener for appointment " + appointment.getAppointmentId() + ": " + e.getMessage());
+            }
+        }
+    }
 
     public Map<String, Integer> getAppointmentStats() {
-        Map<String, Integer> stats = new HashMap<>();
-        stats.put("total", appointments.size());
-        stats.put("scheduled", (int) appointments.stream().filter(Appointment::isScheduled).count());
-        stats.put("completed", (int) appointments.stream().filter(Appointment::isCompleted).count());
-        stats.put("cancelled", (int) appointments.stream().filter(Appointment::isCancelled).count());
-        stats.put("today", (int) appointments.stream().filter(Appointment::isToday).count());
+        Map<String, Integer> stats = readLocked(() -> {
+            Map<String, Integer> counts = new HashMap<>();
+            counts.put("total", statistics.getTotal());
+            counts.put("scheduled", statistics.getScheduled());
+            counts.put("completed", statistics.getCompleted());
+            counts.put("cancelled", statistics.getCancelled());
+            counts.put("today", statistics.getCountOn(LocalDate.now()));
+            return counts;
+        });
         stats.put("upcoming", getUpcomingAppointments(7).size());
         stats.put("overdue", getOverdueAppointments().size());
         
@@ -180,51 +937,97 @@ public class AppointmentService {
 
     public List<Appointment> getUpcomingAppointments(int daysAhead) {
         LocalDateTime now = LocalDateTime.now();
-        return appointments.stream()
-                .filter(apt -> apt.getAppointmentDate().isAfter(now) &&
-                               apt.getAppointmentDate().isBefore(now.plusDays(daysAhead + 1)))
-                .filter(Appointment::isScheduled) 
-                .collect(Collectors.toList());
+        LocalDateTime to = now.plusDays(daysAhead + 1);
+        List<Appointment> upcoming = readLocked(() -> appointments.scheduledBetween(now, to));
+        AppointmentWindow current = window;
+        if (to.isAfter(current.getEnd())) {
+            try {
+                dbService.streamAppointmentsWithStatusBetween("Scheduled", current.getEnd(), to, upcoming::add);
+            } catch (SQLException e) {
+                System.err.println("Error loading appointments past " + current.getEnd() + ": " + e.getMessage());
+            }
+        }
+        return upcoming;
     }
 
     public List<Appointment> getOverdueAppointments() {
         LocalDateTime now = LocalDateTime.now();
-        return appointments.stream()
-                .filter(apt -> apt.getAppointmentDate().isBefore(now) && apt.isScheduled())
-                .collect(Collectors.toList());
+        return readLocked(() -> appointments.scheduledBefore(now));
     }
     
     public Map<String, Integer> getAppointmentsByType() {
-        return appointments.stream()
-                .collect(Collectors.groupingBy(
-                    Appointment::getAppointmentType,
-                    Collectors.collectingAndThen(Collectors.counting(), Math::toIntExact)
-                ));
+        return readLocked(() -> statistics.getCountsByType());
     }
     
     public Map<String, Integer> getAppointmentsByDoctor() {
-        return appointments.stream()
-                .collect(Collectors.groupingBy(
-                    Appointment::getDoctorName,
-                    Collectors.collectingAndThen(Collectors.counting(), Math::toIntExact)
-                ));
+        return readLocked(() -> statistics.getCountsByDoctor());
     }
     
     public double getTotalRevenue() {
-        return appointments.stream()
-                .filter(Appointment::isCompleted)
-                .mapToDouble(Appointment::getConsultationFee)
-                .sum();
+        return read(() -> statistics.getCompletedRevenue());
     }
     
     public double getRevenueByPeriod(LocalDate startDate, LocalDate endDate) {
-        return appointments.stream()
-                .filter(apt -> apt.isCompleted())
-                .filter(apt -> {
-                    LocalDate aptDate = apt.getAppointmentDate().toLocalDate();
-                    return !aptDate.isBefore(startDate) && !aptDate.isAfter(endDate);
-                })
-                .mapToDouble(Appointment::getConsultationFee)
-                .sum();
+        return read(() -> statistics.getCompletedRevenue(startDate, endDate));
+    }
+
+    // Point lookups and counters: optimistic read first. The indexes are not built for
+    // concurrent access, so a read that overlaps a write may see torn state or even throw;
+    // validate() catches both cases and the read is repeated under the read lock.
+    private <T> T read(Supplier<T> reader) {
+        long stamp = stateLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (stateLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (stateLock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        return readLocked(reader);
+    }
+
+    // Reads that walk lists or the time index always hold the read lock.
+    private <T> T readLocked(Supplier<T> reader) {
+        long stamp = stateLock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+    }
+
+    private void write(Runnable writer) {
+        long stamp = stateLock.writeLock();
+        try {
+            writer.run();
+            snapshot = null;
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+    }
+
+    private ReentrantLock stripeFor(int doctorId) {
+        return doctorStripes[stripeIndex(doctorId)];
+    }
+
+    private static int stripeIndex(int doctorId) {
+        return Math.floorMod(doctorId * 0x9E3779B9, DOCTOR_STRIPES);
+    }
+
+    private void lockAllStripes() {
+        for (ReentrantLock stripe : doctorStripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAllStripes() {
+        for (int i = DOCTOR_STRIPES - 1; i >= 0; i--) {
+            doctorStripes[i].unlock();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,253 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dashboard aggregates over the in-memory appointments, updated per mutation instead of
+ * recomputed. Each appointment's current contribution is remembered by id, so recording
+ * a changed appointment subtracts what it contributed before and adds what it contributes
+ * now. Appointments that are not held in memory can be counted as untracked history.
+ * Revenue is kept in whole cents so totals do not depend on the order of updates.
+ * Not thread-safe.
+ */
+class AppointmentStatistics {
+
+    private static final class Contribution {
+        final int count;
+        final boolean scheduled;
+        final boolean completed;
+        final boolean cancelled;
+        final String type;
+        final String doctorName;
+        final boolean dated;
+        final long epochDay;
+        final long revenueCents;
+
+        Contribution(Appointment appointment) {
+            this(1, appointment.isScheduled(), appointment.isCompleted(), appointment.isCancelled(),
+                 appointment.getAppointmentType(), appointment.getDoctorName(),
+                 appointment.getAppointmentDate() != null ? appointment.getAppointmentDate().toLocalDate() : null,
+                 Math.round(appointment.getConsultationFee() * 100));
+        }
+
+        Contribution(AppointmentSummary summary) {
+            this(summary.getCount(), "Scheduled".equalsIgnoreCase(summary.getStatus()),
+                 "Completed".equalsIgnoreCase(summary.getStatus()), "Cancelled".equalsIgnoreCase(summary.getStatus()),
+                 summary.getAppointmentType(), summary.getDoctorName(), summary.getDate(), summary.getFeeCents());
+        }
+
+        private Contribution(int count, boolean scheduled, boolean completed, boolean cancelled,
+                             String type, String doctorName, LocalDate date, long feeCents) {
+            this.count = count;
+            this.scheduled = scheduled;
+            this.completed = completed;
+            this.cancelled = cancelled;
+            this.type = type;
+            this.doctorName = doctorName;
+            this.dated = date != null;
+            this.epochDay = dated ? date.toEpochDay() : 0;
+            this.revenueCents = completed && dated ? feeCents : 0;
+        }
+    }
+
+    private final IntObjectMap<Contribution> contributions = new IntObjectMap<>();
+    private int historyTotal;
+    private int scheduled;
+    private int completed;
+    private int cancelled;
+    private final Map<String, Integer> byType = new HashMap<>();
+    private final Map<String, Integer> byDoctor = new HashMap<>();
+    private final Map<Long, Integer> byDay = new HashMap<>();
+    private final DailySums completedRevenue = new DailySums();
+
+    AppointmentStatistics() {
+    }
+
+    AppointmentStatistics(Iterable<Appointment> appointments) {
+        for (Appointment appointment : appointments) {
+            record(appointment);
+        }
+    }
+
+    /** Adds the appointment, or replaces what an appointment with the same id contributed. */
+    void record(Appointment appointment) {
+        Contribution next = new Contribution(appointment);
+        Contribution previous = contributions.put(appointment.getAppointmentId(), next);
+        if (previous != null) {
+            apply(previous, -1);
+        }
+        apply(next, 1);
+    }
+
+    void remove(int appointmentId) {
+        Contribution previous = contributions.remove(appointmentId);
+        if (previous != null) {
+            apply(previous, -1);
+        }
+    }
+
+    /**
+     * Counts appointments that are not tracked by id, such as history that is not held
+     * in memory. Counted history can later be taken out again with {@link #uncountHistory}.
+     */
+    void addHistory(AppointmentSummary summary) {
+        historyTotal += summary.getCount();
+        apply(new Contribution(summary), 1);
+    }
+
+    void countHistory(Appointment appointment) {
+        historyTotal++;
+        apply(new Contribution(appointment), 1);
+    }
+
+    /** Takes out an untracked appointment, for example because it is tracked by id again. */
+    void uncountHistory(Appointment appointment) {
+        historyTotal--;
+        apply(new Contribution(appointment), -1);
+    }
+
+    int getTotal() { return contributions.size() + historyTotal; }
+
+    int getScheduled() { return scheduled; }
+
+    int getCompleted() { return completed; }
+
+    int getCancelled() { return cancelled; }
+
+    int getCountOn(LocalDate date) {
+        return byDay.getOrDefault(date.toEpochDay(), 0);
+    }
+
+    Map<String, Integer> getCountsByType() {
+        return new HashMap<>(byType);
+    }
+
+    Map<String, Integer> getCountsByDoctor() {
+        return new HashMap<>(byDoctor);
+    }
+
+    double getCompletedRevenue() {
+        return completedRevenue.total() / 100.0;
+    }
+
+    /** Revenue of completed appointments dated within [startDate, endDate], in O(log days). */
+    double getCompletedRevenue(LocalDate startDate, LocalDate endDate) {
+        return completedRevenue.sum(startDate.toEpochDay(), endDate.toEpochDay()) / 100.0;
+    }
+
+    private void apply(Contribution c, int sign) {
+        int delta = sign * c.count;
+        if (c.scheduled) {
+            scheduled += delta;
+        }
+        if (c.completed) {
+            completed += delta;
+        }
+        if (c.cancelled) {
+            cancelled += delta;
+        }
+        // Appointments without a type or doctor name are not grouped.
+        adjust(byType, c.type, delta);
+        adjust(byDoctor, c.doctorName, delta);
+        if (c.dated) {
+            adjust(byDay, c.epochDay, delta);
+            if (c.revenueCents != 0) {
+                completedRevenue.add(c.epochDay, sign * c.revenueCents);
+            }
+        }
+    }
+
+    private static <K> void adjust(Map<K, Integer> counts, K key, int delta) {
+        if (key != null) {
+            counts.merge(key, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    /**
+     * Fenwick tree of per-day sums over a contiguous, growable range of epoch days.
+     */
+    private static final class DailySums {
+        private static final int INITIAL_DAYS = 1024;
+
+        private long firstDay;
+        private long[] daily = new long[0];
+        private long[] tree = new long[1];
+        private long total;
+
+        void add(long epochDay, long delta) {
+            ensureCovers(epochDay);
+            int index = (int) (epochDay - firstDay);
+            daily[index] += delta;
+            for (int i = index + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+            total += delta;
+        }
+
+        long total() {
+            return total;
+        }
+
+        long sum(long fromDay, long toDay) {
+            if (daily.length == 0 || fromDay > toDay) {
+                return 0;
+            }
+            long from = Math.max(fromDay, firstDay);
+            long to = Math.min(toDay, firstDay + daily.length - 1);
+            if (from > to) {
+                return 0;
+            }
+            return prefix((int) (to - firstDay) + 1) - prefix((int) (from - firstDay));
+        }
+
+        // Sum of the first count days of the range.
+        private long prefix(int count) {
+            long sum = 0;
+            for (int i = count; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        private void ensureCovers(long epochDay) {
+            if (daily.length == 0) {
+                firstDay = epochDay - INITIAL_DAYS / 2;
+                daily = new long[INITIAL_DAYS];
+                tree = new long[INITIAL_DAYS + 1];
+                return;
+            }
+            long lastDay = firstDay + daily.length - 1;
+            if (epochDay >= firstDay && epochDay <= lastDay) {
+                return;
+            }
+            // Grow at least geometrically so a run of new days costs amortized O(1) rebuilds.
+            long newFirst = firstDay;
+            long newLast = lastDay;
+            if (epochDay < firstDay) {
+                newFirst = Math.min(epochDay, firstDay - daily.length);
+            } else {
+                newLast = Math.max(epochDay, lastDay + daily.length);
+            }
+            long[] grown = new long[Math.toIntExact(newLast - newFirst + 1)];
+            System.arraycopy(daily, 0, grown, (int) (firstDay - newFirst), daily.length);
+            firstDay = newFirst;
+            daily = grown;
+            rebuild();
+        }
+
+        private void rebuild() {
+            tree = new long[daily.length + 1];
+            for (int i = 1; i < tree.length; i++) {
+                tree[i] += daily[i - 1];
+                int parent = i + (i & -i);
+                if (parent < tree.length) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.healthprediction.service;
+
+import java.time.LocalDate;
+
+/**
+ * Number of appointments sharing a status, type, doctor and day, with the sum of their
+ * consultation fees in cents. Lets aggregates cover appointments that are not held in memory.
+ */
+public class AppointmentSummary {
+
+    private final String status;
+    private final String appointmentType;
+    private final String doctorName;
+    private final LocalDate date;
+    private final int count;
+    private final long feeCents;
+
+    public AppointmentSummary(String status, String appointmentType, String doctorName, LocalDate date,
+                              int count, long feeCents) {
+        this.status = status;
+        this.appointmentType = appointmentType;
+        this.doctorName = doctorName;
+        this.date = date;
+        this.count = count;
+        this.feeCents = feeCents;
+    }
+
+    public String getStatus() { return status; }
+
+    public String getAppointmentType() { return appointmentType; }
+
+    public String getDoctorName() { return doctorName; }
+
+    public LocalDate getDate() { return date; }
+
+    public int getCount() { return count; }
+
+    public long getFeeCents() { return feeCents; }
+
+    @Override
+    public String toString() {
+        return "AppointmentSummary{status=" + status + ", type=" + appointmentType + ", doctor=" + doctorName +
+               ", date=" + date + ", count=" + count + ", feeCents=" + feeCents + '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * The range of appointment dates {@link AppointmentService} keeps in memory: from the
+ * start of the day {@code pastDays} before today up to the end of the day
+ * {@code futureDays} after it. Appointments before the window that are still scheduled
+ * (overdue ones) are resident as well, since they still need attention.
+ */
+final class AppointmentWindow {
+
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+
+    private AppointmentWindow(LocalDateTime start, LocalDateTime end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    static AppointmentWindow around(LocalDate today, int pastDays, int futureDays) {
+        return new AppointmentWindow(today.minusDays(pastDays).atStartOfDay(),
+                                     today.plusDays(futureDays + 1L).atStartOfDay());
+    }
+
+    LocalDateTime getStart() { return start; }
+
+    /** Exclusive. */
+    LocalDateTime getEnd() { return end; }
+
+    boolean contains(Appointment appointment) {
+        LocalDateTime date = appointment.getAppointmentDate();
+        if (date == null || !date.isBefore(end)) {
+            return false;
+        }
+        return !date.isBefore(start) || appointment.isScheduled();
+    }
+
+    boolean sameAs(AppointmentWindow other) {
+        return start.equals(other.start) && end.equals(other.end);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start.toLocalDate() + ", " + end.toLocalDate() + ")";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,356 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind persistence for appointment mutations. Callers enqueue into a bounded
+ * queue and a single background writer drains it, committing everything it picked up
+ * in one transaction (group commit). A write that still fails on its own is stored in
+ * the {@code failed_writes} table instead of being dropped.
+ */
+public class AppointmentWriteQueue implements AutoCloseable {
+
+    public enum Durability {
+        /** The caller blocks until its mutation is committed; concurrent callers share a commit. */
+        SYNC,
+        /** The caller returns immediately; queued mutations are committed at least every flush interval. */
+        ASYNC
+    }
+
+    private enum Operation { INSERT, UPDATE, STATUS, FLUSH }
+
+    private static final class PendingWrite {
+        final Operation operation;
+        final Appointment appointment;
+        final int appointmentId;
+        final String status;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingWrite(Operation operation, Appointment appointment, int appointmentId, String status) {
+            this.operation = operation;
+            this.appointment = appointment;
+            this.appointmentId = appointmentId;
+            this.status = status;
+        }
+    }
+
+    private static final int DEFAULT_CAPACITY = 10_000;
+    private static final int MAX_GROUP_SIZE = 500;
+    private static final long WRITE_TIMEOUT_MILLIS = Long.getLong("healthprediction.appointments.writeTimeoutMillis", 30_000);
+
+    private final DatabaseService dbService;
+    private final Durability durability;
+    private final long flushIntervalMillis;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Thread writerThread;
+    private final Thread shutdownHook;
+    // Producers check running and enqueue under the read lock and close() clears it under
+    // the write lock, so nothing can be queued after the writer has decided to stop.
+    private final ReadWriteLock lifecycle = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    public AppointmentWriteQueue(DatabaseService dbService, Durability durability, long flushIntervalMillis) {
+        this(dbService, durability, flushIntervalMillis, DEFAULT_CAPACITY);
+    }
+
+    public AppointmentWriteQueue(DatabaseService dbService, Durability durability, long flushIntervalMillis, int capacity) {
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("flushIntervalMillis must not be negative");
+        }
+        this.dbService = dbService;
+        this.durability = durability;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writerThread = new Thread(this::drainLoop, "appointment-write-behind");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        this.shutdownHook = new Thread(this::close, "appointment-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void enqueueInsert(Appointment appointment) {
+        submit(new PendingWrite(Operation.INSERT, new Appointment(appointment), appointment.getAppointmentId(), null));
+    }
+
+    public void enqueueUpdate(Appointment appointment) {
+        submit(new PendingWrite(Operation.UPDATE, new Appointment(appointment), appointment.getAppointmentId(), null));
+    }
+
+    public void enqueueStatusChange(int appointmentId, String status) {
+        submit(new PendingWrite(Operation.STATUS, null, appointmentId, status));
+    }
+
+    /**
+     * Queues several inserts back to back, typically a recurring series, so they are
+     * committed together. With SYNC durability the caller waits for all of them at once.
+     */
+    public void enqueueInserts(List<Appointment> appointments) {
+        List<PendingWrite> writes = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            writes.add(new PendingWrite(Operation.INSERT, new Appointment(appointment), appointment.getAppointmentId(), null));
+        }
+        submitAll(writes);
+    }
+
+    public void enqueueStatusChanges(Collection<Integer> appointmentIds, String status) {
+        List<PendingWrite> writes = new ArrayList<>(appointmentIds.size());
+        for (int appointmentId : appointmentIds) {
+            writes.add(new PendingWrite(Operation.STATUS, null, appointmentId, status));
+        }
+        submitAll(writes);
+    }
+
+    /**
+     * Barrier: returns once every mutation enqueued before this call has been committed
+     * (or moved to the dead-letter table).
+     */
+    public void flush() {
+        PendingWrite barrier = new PendingWrite(Operation.FLUSH, null, 0, null);
+        lifecycle.readLock().lock();
+        try {
+            if (!running) {
+                // close() has already committed everything that was queued.
+                return;
+            }
+            enqueue(barrier);
+        } finally {
+            lifecycle.readLock().unlock();
+        }
+        await(barrier, deadline());
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    private void submit(PendingWrite write) {
+        submitAll(List.of(write));
+    }
+
+    private void submitAll(List<PendingWrite> writes) {
+        lifecycle.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Appointment write queue is closed");
+            }
+            writes.forEach(this::enqueue);
+        } finally {
+            lifecycle.readLock().unlock();
+        }
+        if (durability == Durability.SYNC) {
+            long deadline = deadline();
+            for (PendingWrite write : writes) {
+                await(write, deadline);
+            }
+        }
+    }
+
+    // Blocks when the queue is full, which throttles producers to the writer's pace.
+    private void enqueue(PendingWrite write) {
+        try {
+            queue.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing appointment write", e);
+        }
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @throws IllegalStateException if the write failed or is not committed by the deadline;
+     *         a timed-out write may still be committed later
+     */
+    private void await(PendingWrite write, long deadline) {
+        try {
+            write.done.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Appointment write not committed after " + WRITE_TIMEOUT_MILLIS + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for appointment write", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Appointment write failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingWrite> group = new ArrayList<>(MAX_GROUP_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                if (durability == Durability.ASYNC && first.operation != Operation.FLUSH) {
+                    collectUntilDeadline(group, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+                }
+                queue.drainTo(group, MAX_GROUP_SIZE - group.size());
+                commitGroup(group);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    queue.drainTo(group);
+                    commitGroup(group);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Unexpected error in appointment write-behind: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void collectUntilDeadline(List<PendingWrite> group, long deadline) throws InterruptedException {
+        while (group.size() < MAX_GROUP_SIZE) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            group.add(next);
+            if (next.operation == Operation.FLUSH) {
+                return;
+            }
+        }
+    }
+
+    private void commitGroup(List<PendingWrite> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        try {
+            dbService.inTransaction(connection -> {
+                for (PendingWrite write : group) {
+                    apply(write);
+                }
+                return null;
+            });
+            for (PendingWrite write : group) {
+                write.done.complete(null);
+            }
+        } catch (SQLException | RuntimeException groupFailure) {
+            // Something in the group failed and the transaction was rolled back:
+            // retry each write on its own so one bad row cannot sink the others.
+            for (PendingWrite write : group) {
+                try {
+                    apply(write);
+                    write.done.complete(null);
+                } catch (SQLException | RuntimeException e) {
+                    deadLetter(write, e);
+                    write.done.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void apply(PendingWrite write) throws SQLException {
+        switch (write.operation) {
+            case INSERT:
+                dbService.saveAppointment(write.appointment);
+                break;
+            case UPDATE:
+                dbService.updateAppointment(write.appointment);
+                break;
+            case STATUS:
+                dbService.updateAppointmentStatus(write.appointmentId, write.status);
+                break;
+            case FLUSH:
+                break;
+        }
+    }
+
+    private void deadLetter(PendingWrite write, Exception cause) {
+        String payload = describe(write);
+        System.err.println("Appointment " + write.operation + " failed, moved to failed_writes: " + payload
+                + " (" + cause.getMessage() + ")");
+        try {
+            dbService.saveFailedWrite("appointment", write.appointmentId, write.operation.name(), payload, cause.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Could not record failed appointment write " + payload + ": " + e.getMessage());
+        }
+    }
+
+    private static String describe(PendingWrite write) {
+        if (write.appointment == null) {
+            return "appointmentId=" + write.appointmentId + ", status=" + write.status;
+        }
+        Appointment apt = write.appointment;
+        return "appointmentId=" + apt.getAppointmentId() +
+               ", patientId=" + apt.getPatientId() +
+               ", patientName=" + apt.getPatientName() +
+               ", doctorId=" + apt.getDoctorId() +
+               ", doctorName=" + apt.getDoctorName() +
+               ", specialization=" + apt.getDoctorSpecialization() +
+               ", type=" + apt.getAppointmentType() +
+               ", datetime=" + apt.getAppointmentDate() +
+               ", durationMinutes=" + apt.getDurationMinutes() +
+               ", status=" + apt.getStatus() +
+               ", fee=" + apt.getConsultationFee() +
+               ", emergency=" + apt.isEmergency() +
+               ", notes=" + apt.getNotes();
+    }
+
+    /**
+     * Stops accepting writes, commits everything still queued and stops the writer thread.
+     */
+    @Override
+    public void close() {
+        lifecycle.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            lifecycle.writeLock().unlock();
+        }
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writerThread.isAlive()) {
+            // Only reached if the writer died; fail what it left rather than strand the callers.
+            List<PendingWrite> leftover = new ArrayList<>();
+            queue.drainTo(leftover);
+            for (PendingWrite write : leftover) {
+                IllegalStateException closed = new IllegalStateException("Appointment write queue closed before the write was committed");
+                if (write.operation != Operation.FLUSH) {
+                    deadLetter(write, closed);
+                }
+                write.done.completeExceptionally(closed);
+            }
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM is already shutting down
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.healthprediction.service;
+
+/**
+ * Outcome of a batch prediction run: how many patients were scored, how many got an
+ * error result instead, how fast it went, and whether it was cut short.
+ */
+public class BatchPredictionReport {
+    private final int patients;
+    private final int failed;
+    private final int parallelism;
+    private final long elapsedNanos;
+    private final Exception abortCause;
+
+    BatchPredictionReport(int patients, int failed, int parallelism, long elapsedNanos, Exception abortCause) {
+        this.patients = patients;
+        this.failed = failed;
+        this.parallelism = parallelism;
+        this.elapsedNanos = elapsedNanos;
+        this.abortCause = abortCause;
+    }
+
+    /** False if the run stopped early, leaving patients after the last page unscored. */
+    public boolean isComplete() { return abortCause == null; }
+
+    /** Why the run stopped early, or null if it did not. */
+    public Exception getAbortCause() { return abortCause; }
+
+    public int getPatients() { return patients; }
+
+    public int getFailed() { return failed; }
+
+    public int getParallelism() { return parallelism; }
+
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    public double getPatientsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : patients * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchPredictionReport{patients=%d, failed=%d, parallelism=%d, elapsed=%d ms, %.0f patients/s%s}",
+                             patients, failed, parallelism, getElapsedMillis(), getPatientsPerSecond(),
+                             abortCause != null ? ", aborted: " + abortCause.getMessage() : "");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.healthprediction.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a bulk insert. Generated keys are listed in input order for the rows
+ * that were saved; failed rows are reported by their position in the input.
+ */
+public class BatchResult {
+    private final int attempted;
+    private final int[] generatedKeys;
+    private final Map<Integer, String> failures;
+
+    private BatchResult(int attempted, int[] generatedKeys, Map<Integer, String> failures) {
+        this.attempted = attempted;
+        this.generatedKeys = generatedKeys;
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    public int getAttempted() { return attempted; }
+
+    public int getSucceeded() { return generatedKeys.length; }
+
+    public int[] getGeneratedKeys() { return generatedKeys.clone(); }
+
+    public Map<Integer, String> getFailures() { return failures; }
+
+    public boolean hasFailures() { return !failures.isEmpty(); }
+
+    @Override
+    public String toString() {
+        return "BatchResult{attempted=" + attempted + ", succeeded=" + generatedKeys.length +
+               ", failed=" + failures.size() + '}';
+    }
+
+    static final class Builder {
+        private int[] keys = new int[64];
+        private int keyCount;
+        private final Map<Integer, String> failures = new LinkedHashMap<>();
+
+        void addKey(int key) {
+            if (keyCount == keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            keys[keyCount++] = key;
+        }
+
+        void addFailure(int inputIndex, String message) {
+            failures.put(inputIndex, message);
+        }
+
+        int size() {
+            return keyCount + failures.size();
+        }
+
+        BatchResult build() {
+            return new BatchResult(size(), Arrays.copyOf(keys, keyCount), failures);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.healthprediction.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Small-integer codes for categorical columns (gender, appointment status, smoking
+ * status, exercise frequency), backed by the {@code category_codes} table.
+ * Decoding is an array lookup that returns the same shared String for every row.
+ * Labels not seen before get the next free code, so free-text input is never lost.
+ */
+class CategoryDictionary {
+    static final String GENDER = "gender";
+    static final String APPOINTMENT_STATUS = "appointment_status";
+    static final String SMOKING_STATUS = "smoking_status";
+    static final String EXERCISE_FREQUENCY = "exercise_frequency";
+
+    private static final class Category {
+        final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        volatile String[] labels = new String[8];
+    }
+
+    private final Map<String, Category> categories = new ConcurrentHashMap<>();
+
+    /**
+     * Replaces the in-memory dictionary with the table contents. Called at startup and
+     * after a rollback, which may have discarded codes assigned inside the transaction.
+     */
+    synchronized void reload(Connection connection) throws SQLException {
+        Map<String, Category> loaded = new HashMap<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT category, code, label FROM category_codes")) {
+            while (rs.next()) {
+                Category category = loaded.computeIfAbsent(rs.getString(1), name -> new Category());
+                register(category, rs.getInt(2), rs.getString(3));
+            }
+        }
+        categories.clear();
+        categories.putAll(loaded);
+    }
+
+    /**
+     * Binds the code for {@code label}, assigning and persisting a new code on the
+     * statement's (writer) connection if the label is new. A null label binds SQL NULL.
+     */
+    void bind(PreparedStatement pstmt, int index, String category, String label) throws SQLException {
+        if (label == null) {
+            pstmt.setNull(index, Types.INTEGER);
+            return;
+        }
+        Integer code = categoryFor(category).codes.get(label);
+        pstmt.setInt(index, code != null ? code : assignCode(pstmt.getConnection(), category, label));
+    }
+
+    /**
+     * Label for a stored code, or null for SQL NULL (signalled by {@code wasNull}).
+     */
+    String decode(String category, int code, boolean wasNull, Connection connection) throws SQLException {
+        if (wasNull) {
+            return null;
+        }
+        String[] labels = categoryFor(category).labels;
+        if (code > 0 && code < labels.length && labels[code] != null) {
+            return labels[code];
+        }
+        // Assigned by another process since we loaded; refresh once.
+        reload(connection);
+        labels = categoryFor(category).labels;
+        return code > 0 && code < labels.length ? labels[code] : null;
+    }
+
+    /**
+     * Codes of every known label in the category equal to {@code label} ignoring case,
+     * for SQL filters that must agree with case-insensitive checks such as
+     * {@code Appointment.isScheduled()}.
+     */
+    List<Integer> codesIgnoringCase(String category, String label) {
+        List<Integer> codes = new ArrayList<>();
+        categoryFor(category).codes.forEach((known, code) -> {
+            if (known.equalsIgnoreCase(label)) {
+                codes.add(code);
+            }
+        });
+        return codes;
+    }
+
+    private synchronized int assignCode(Connection writer, String categoryName, String label) throws SQLException {
+        Category category = categoryFor(categoryName);
+        Integer existing = category.codes.get(label);
+        if (existing != null) {
+            return existing;
+        }
+        int code;
+        try (PreparedStatement pstmt = writer.prepareStatement(
+                "SELECT COALESCE(MAX(code), 0) + 1 FROM category_codes WHERE category = ?")) {
+            pstmt.setString(1, categoryName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                code = rs.getInt(1);
+            }
+        }
+        try (PreparedStatement pstmt = writer.prepareStatement(
+                "INSERT INTO category_codes (category, code, label) VALUES (?, ?, ?)")) {
+            pstmt.setString(1, categoryName);
+            pstmt.setInt(2, code);
+            pstmt.setString(3, label);
+            pstmt.executeUpdate();
+        }
+        register(category, code, label);
+        return code;
+    }
+
+    private Category categoryFor(String name) {
+        return categories.computeIfAbsent(name, n -> new Category());
+    }
+
+    private static void register(Category category, int code, String label) {
+        String[] labels = category.labels;
+        if (code >= labels.length) {
+            labels = Arrays.copyOf(labels, Math.max(code + 1, labels.length * 2));
+        } else {
+            labels = labels.clone();
+        }
+        labels[code] = label;
+        category.labels = labels;
+        category.codes.put(label, code);
+    }
+}
\ No newline at end of file
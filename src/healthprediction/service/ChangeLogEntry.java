@@ -0,0 +1,36 @@
+package com.healthprediction.service;
+
+/**
+ * One row of the {@code change_log} table: a row of {@code tableName} with id
+ * {@code rowId} was inserted, updated or deleted. Sequence numbers only grow, so a
+ * reader can resume from the last sequence number it has seen.
+ */
+public class ChangeLogEntry {
+
+    public enum Operation { INSERT, UPDATE, DELETE }
+
+    private final long seq;
+    private final String tableName;
+    private final int rowId;
+    private final Operation operation;
+
+    public ChangeLogEntry(long seq, String tableName, int rowId, Operation operation) {
+        this.seq = seq;
+        this.tableName = tableName;
+        this.rowId = rowId;
+        this.operation = operation;
+    }
+
+    public long getSeq() { return seq; }
+
+    public String getTableName() { return tableName; }
+
+    public int getRowId() { return rowId; }
+
+    public Operation getOperation() { return operation; }
+
+    @Override
+    public String toString() {
+        return "ChangeLogEntry{seq=" + seq + ", table=" + tableName + ", rowId=" + rowId + ", op=" + operation + '}';
+    }
+}
\ No newline at end of file
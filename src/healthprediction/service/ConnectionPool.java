@@ -0,0 +1,143 @@
+package com.healthprediction.service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SQLite connection pool with a single serialized writer and a fixed set of readers.
+ * The database is switched to WAL mode so readers never block behind the writer
+ * and see the last committed snapshot.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private static final long ACQUIRE_TIMEOUT_SECONDS = 30;
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+
+    private final Connection writer;
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private final BlockingQueue<Connection> readers;
+    private final List<Connection> allReaders = new ArrayList<>();
+
+    public ConnectionPool(String url, int readerCount) throws SQLException {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("readerCount must be at least 1");
+        }
+        this.writer = DriverManager.getConnection(url);
+        try (Statement stmt = writer.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=WAL");
+            stmt.execute("PRAGMA synchronous=NORMAL");
+            stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+        }
+
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        for (int i = 0; i < readerCount; i++) {
+            Connection reader = DriverManager.getConnection(url);
+            try (Statement stmt = reader.createStatement()) {
+                stmt.execute("PRAGMA query_only=ON");
+                stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+            }
+            allReaders.add(reader);
+            readers.add(reader);
+        }
+    }
+
+    /**
+     * Runs the work on a pooled read-only connection. Any number of reads
+     * (up to the pool size) proceed in parallel with each other and with the writer.
+     */
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        Connection connection = acquireReader();
+        try {
+            return work.apply(connection);
+        } finally {
+            readers.offer(connection);
+        }
+    }
+
+    /**
+     * Runs the work on the single writer connection. Writes are serialized in
+     * arrival order; the lock is reentrant so a write may call other writes.
+     */
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        try {
+            if (!writeLock.tryLock(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new SQLException("Timed out waiting for the writer connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the writer connection", e);
+        }
+        try {
+            return work.apply(writer);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a reader out of the pool for work that outlives a single callback, such as
+     * a lazily consumed result stream. It must be handed back with {@link #releaseReader(Connection)}.
+     */
+    Connection borrowReader() throws SQLException {
+        return acquireReader();
+    }
+
+    void releaseReader(Connection connection) {
+        readers.offer(connection);
+    }
+
+    private Connection acquireReader() throws SQLException {
+        try {
+            Connection connection = readers.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (connection == null) {
+                throw new SQLException("Timed out waiting for a reader connection");
+            }
+            return connection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a reader connection", e);
+        }
+    }
+
+    public int getReaderCount() {
+        return allReaders.size();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        writeLock.lock();
+        try {
+            for (Connection connection : allReaders) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    failure = e;
+                }
+            }
+            try {
+                writer.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
\ No newline at end of file
@@ -5,17 +5,106 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime; 
+import java.time.ZoneOffset;
+import java.time.Instant;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DatabaseService {
     private static DatabaseService instance;
-    private Connection connection;
+    private ConnectionPool pool;
+    private ScheduledExecutorService maintenance;
     private static final String DB_URL = "jdbc:sqlite:health_prediction.db"; 
+    private static final int READER_CONNECTIONS = Integer.getInteger("healthprediction.db.readers",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private static final String SQL_INSERT_PATIENT = "INSERT INTO patients (first_name, last_name, email, phone, date_of_birth, gender, address, existing_conditions, allergies, medications) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_APPOINTMENT = "INSERT INTO appointments (appointment_id, patient_id, patient_name, doctor_id, doctor_name, doctor_specialization, appointment_type, appointment_datetime, duration_minutes, status, notes, symptoms, diagnosis, prescription, consultation_fee, is_emergency, created_date, last_modified, series_id, patient_rating) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_INSERT_HEALTH_RECORD = "INSERT INTO health_records (patient_id, record_date, heart_rate, systolic_bp, diastolic_bp, blood_sugar, cholesterol, temperature, symptoms, diagnosis, medication, smoking_status, exercise_frequency, stress_level, notes) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_ALL_PATIENTS = "SELECT * FROM patients ORDER BY patient_id";
+    private static final String SQL_PATIENTS_PAGE = "SELECT * FROM patients WHERE patient_id > ? ORDER BY patient_id LIMIT ?";
+    private static final String SQL_ALL_DOCTORS = "SELECT * FROM doctors ORDER BY doctor_id";
+    private static final String SQL_DOCTORS_PAGE = "SELECT * FROM doctors WHERE doctor_id > ? ORDER BY doctor_id LIMIT ?";
+    private static final String SQL_ALL_APPOINTMENTS = "SELECT * FROM appointments ORDER BY appointment_id";
+    private static final String SQL_APPOINTMENTS_PAGE = "SELECT * FROM appointments WHERE appointment_id > ? ORDER BY appointment_id LIMIT ?";
+    private static final String SQL_SEARCH_PATIENTS = "SELECT p.* FROM patients_fts JOIN patients p ON p.patient_id = patients_fts.rowid WHERE patients_fts MATCH ? ORDER BY patients_fts.rank LIMIT ?";
+    private static final int DEFAULT_SEARCH_LIMIT = 200;
+    private static final int STREAM_FETCH_SIZE = 256;
+    private static final String SQL_HEALTH_RECORDS_FOR_PATIENT = "SELECT * FROM health_records WHERE patient_id = ? ORDER BY record_date DESC, record_id DESC";
+    private static final String SQL_LATEST_HEALTH_RECORD = SQL_HEALTH_RECORDS_FOR_PATIENT + " LIMIT 1";
+    private static final String SQL_HEALTH_RECORDS_WITH_PATIENTS = "SELECT hr.*, p.date_of_birth, p.allergies, p.medications FROM health_records hr JOIN patients p ON p.patient_id = hr.patient_id ORDER BY hr.record_id";
+    // %s is replaced by the placeholder list of one IN chunk.
+    private static final String SQL_PATIENTS_BY_IDS = "SELECT * FROM patients WHERE patient_id IN (%s)";
+    private static final String SQL_LATEST_HEALTH_RECORDS_BY_PATIENTS = "SELECT * FROM (SELECT hr.*, ROW_NUMBER() OVER (PARTITION BY patient_id ORDER BY record_date DESC, record_id DESC) AS rn FROM health_records hr WHERE patient_id IN (%s)) WHERE rn = 1";
+    // Well below SQLITE_MAX_VARIABLE_NUMBER (999 on older builds).
+    private static final int IN_LIST_CHUNK_SIZE = 500;
+    private static final String SQL_APPOINTMENTS_BY_IDS = "SELECT * FROM appointments WHERE appointment_id IN (%s)";
+    private static final String SQL_POLL_CHANGES = "SELECT seq, table_name, row_id, op FROM change_log WHERE seq > ? ORDER BY seq LIMIT ?";
+    private static final int DEFAULT_POLL_LIMIT = 1000;
+    private static final long CHANGE_LOG_RETENTION_SECONDS = Long.getLong("healthprediction.changelog.retentionSeconds", 24 * 60 * 60);
+    private static final long CHANGE_LOG_COMPACTION_INTERVAL_SECONDS = 60 * 60;
+    private static final String SQL_APPOINTMENTS_FOR_PATIENT = "SELECT * FROM appointments WHERE patient_id = ? ORDER BY appointment_datetime DESC";
+    private static final String SQL_APPOINTMENTS_FOR_DOCTOR = "SELECT * FROM appointments WHERE doctor_id = ? ORDER BY appointment_datetime";
+    private static final String SQL_APPOINTMENTS_IN_SERIES = "SELECT * FROM appointments WHERE series_id = ? ORDER BY appointment_datetime";
+    private static final String SQL_APPOINTMENTS_BETWEEN = "SELECT * FROM appointments WHERE appointment_datetime >= ? AND appointment_datetime < ? ORDER BY appointment_datetime";
+    private static final String SQL_APPOINTMENTS_WITH_STATUS_BETWEEN = "SELECT * FROM appointments WHERE status IN (%s) AND appointment_datetime >= ? AND appointment_datetime < ?";
+    // Rows outside a window [?, ?) that are not still scheduled before it, grouped; epoch_day is floor(seconds / 86400).
+    // A String.format template like the IN-list queries, so SQL's modulo is written %%.
+    private static final String SQL_APPOINTMENT_HISTORY_SUMMARIES = "SELECT status, appointment_type, doctor_name, "
+            + "(appointment_datetime - (appointment_datetime %% 86400 + 86400) %% 86400) / 86400 AS epoch_day, "
+            + "COUNT(*) AS appointment_count, SUM(CAST(ROUND(consultation_fee * 100) AS INTEGER)) AS fee_cents "
+            + "FROM appointments WHERE appointment_datetime IS NULL OR appointment_datetime >= ? "
+            + "OR (appointment_datetime < ? AND (status IS NULL OR status NOT IN (%s))) "
+            + "GROUP BY status, appointment_type, doctor_name, epoch_day";
+
+    // Checked with EXPLAIN QUERY PLAN at startup; none of these may fall back to a scan.
+    private static final Map<String, String> HOT_QUERIES = Map.of(
+        "healthRecordsForPatient", SQL_HEALTH_RECORDS_FOR_PATIENT,
+        "latestHealthRecord", SQL_LATEST_HEALTH_RECORD,
+        "appointmentsForPatient", SQL_APPOINTMENTS_FOR_PATIENT,
+        "appointmentsForDoctor", SQL_APPOINTMENTS_FOR_DOCTOR,
+        "appointmentsBetween", SQL_APPOINTMENTS_BETWEEN,
+        "appointmentsInSeries", SQL_APPOINTMENTS_IN_SERIES,
+        "appointmentsWithStatusBetween", String.format(SQL_APPOINTMENTS_WITH_STATUS_BETWEEN, "?"),
+        "searchPatients", SQL_SEARCH_PATIENTS
+    );
+    
+    private volatile int batchChunkSize = 1000;
+    private final CategoryDictionary categories = new CategoryDictionary();
+    private final List<IntConsumer> patientChangeListeners = new CopyOnWriteArrayList<>();
+
+    @FunctionalInterface
+    private interface RowBinder<T> {
+        void bind(PreparedStatement pstmt, T item) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
     
     private DatabaseService() {}
     
-    public static DatabaseService getInstance() {
+    public static synchronized DatabaseService getInstance() {
         if (instance == null) {
             instance = new DatabaseService();
         }
@@ -26,122 +115,38 @@ public class DatabaseService {
         try {
             
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection(DB_URL);
-            createTables();
-            insertSampleData(); 
-            System.out.println("Database initialized successfully");
+            pool = new ConnectionPool(DB_URL, READER_CONNECTIONS);
+            pool.write(conn -> {
+                new SchemaMigrator().migrate(conn);
+                categories.reload(conn);
+                // Another SQLite version may plan differently; that is slower, not broken.
+                for (String problem : SchemaMigrator.checkQueryPlans(conn, HOT_QUERIES)) {
+                    System.err.println("Warning: hot query is not using an index: " + problem);
+                }
+                insertSampleData(conn);
+                return null;
+            });
+            startChangeLogCompaction();
+            System.out.println("Database initialized successfully (" + pool.getReaderCount() + " reader connections, WAL mode)");
         } catch (Exception e) {
             System.err.println("Database initialization failed: " + e.getMessage());
             e.printStackTrace(); 
         }
     }
     
-    private void createTables() throws SQLException {
-        Statement stmt = connection.createStatement();
-
-        
-        String createPatientsTable = """
-            CREATE TABLE IF NOT EXISTS patients (
-                patient_id INTEGER PRIMARY KEY AUTOINCREMENT,
-                first_name TEXT NOT NULL,
-                last_name TEXT NOT NULL,
-                email TEXT UNIQUE,
-                phone TEXT,
-                date_of_birth TEXT,
-                gender TEXT,
-                address TEXT,
-                existing_conditions TEXT,
-                allergies TEXT,
-                medications TEXT
-            );
-            """;
-        stmt.execute(createPatientsTable);
-
-        
-        String createDoctorsTable = """
-            CREATE TABLE IF NOT EXISTS doctors (
-                doctor_id INTEGER PRIMARY KEY AUTOINCREMENT,
-                first_name TEXT NOT NULL,
-                last_name TEXT NOT NULL,
-                email TEXT UNIQUE,
-                phone TEXT,
-                specialization TEXT,
-                qualification TEXT,
-                experience_years INTEGER,
-                license_number TEXT UNIQUE,
-                address TEXT,
-                consultation_fee REAL,
-                working_hours_start TEXT,
-                working_hours_end TEXT,
-                working_days TEXT,
-                is_available INTEGER,
-                department TEXT,
-                biography TEXT,
-                languages TEXT,
-                image_url TEXT,
-                join_date TEXT,
-                rating REAL,
-                total_patients INTEGER,
-                is_active INTEGER
-            );
-            """;
-        stmt.execute(createDoctorsTable);
-
-        
-        String createAppointmentsTable = """
-            CREATE TABLE IF NOT EXISTS appointments (
-                appointment_id INTEGER PRIMARY KEY AUTOINCREMENT,
-                patient_id INTEGER NOT NULL,
-                patient_name TEXT,
-                doctor_id INTEGER NOT NULL,
-                doctor_name TEXT,
-                doctor_specialization TEXT,
-                appointment_type TEXT,
-                appointment_datetime TEXT NOT NULL,
-                duration_minutes INTEGER,
-                status TEXT,
-                notes TEXT,
-                symptoms TEXT,
-                diagnosis TEXT,
-                prescription TEXT,
-                consultation_fee REAL,
-                is_emergency INTEGER,
-                created_date TEXT,
-                last_modified TEXT,
-                FOREIGN KEY (patient_id) REFERENCES patients(patient_id),
-                FOREIGN KEY (doctor_id) REFERENCES doctors(doctor_id)
-            );
-            """;
-        stmt.execute(createAppointmentsTable);
-
-        
-        String createHealthRecordsTable = """
-            CREATE TABLE IF NOT EXISTS health_records (
-                record_id INTEGER PRIMARY KEY AUTOINCREMENT,
-                patient_id INTEGER,
-                record_date TEXT,
-                heart_rate REAL,
-                systolic_bp REAL,
-                diastolic_bp REAL,
-                blood_sugar REAL,
-                cholesterol REAL,
-                temperature REAL,
-                symptoms TEXT,
-                diagnosis TEXT,
-                medication TEXT,
-                smoking_status TEXT,
-                exercise_frequency TEXT,
-                stress_level INTEGER,
-                notes TEXT,
-                FOREIGN KEY(patient_id) REFERENCES patients(patient_id)
-            );
-            """;
-        stmt.execute(createHealthRecordsTable);
-        
-        stmt.close();
+    /**
+     * Diagnostic check that every hot query is answered from an index.
+     *
+     * @throws IllegalStateException listing every query whose plan regressed
+     */
+    public void verifyQueryPlans() throws SQLException {
+        pool.read(connection -> {
+            SchemaMigrator.verifyQueryPlans(connection, HOT_QUERIES);
+            return null;
+        });
     }
 
-    private void insertSampleData() throws SQLException {
+    private void insertSampleData(Connection connection) throws SQLException {
         
         Statement stmt = connection.createStatement();
 
@@ -203,103 +208,188 @@ public class DatabaseService {
 
     
     public void savePatient(Patient patient) throws SQLException {
-        String sql = "INSERT INTO patients (first_name, last_name, email, phone, date_of_birth, gender, address, existing_conditions, allergies, medications) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String sql = SQL_INSERT_PATIENT;
         
-        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, patient.getFirstName());
-            pstmt.setString(2, patient.getLastName());
-            pstmt.setString(3, patient.getEmail());
-            pstmt.setString(4, patient.getPhone());
-            pstmt.setString(5, patient.getDateOfBirth().toString());
-            pstmt.setString(6, patient.getGender());
-            pstmt.setString(7, patient.getAddress());
-            pstmt.setString(8, patient.getExistingConditions());
-            pstmt.setString(9, patient.getAllergies());
-            pstmt.setString(10, patient.getMedications());
-            pstmt.executeUpdate();
-
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    patient.setPatientId(generatedKeys.getInt(1));
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                bindPatient(pstmt, patient);
+                pstmt.executeUpdate();
+
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        patient.setPatientId(generatedKeys.getInt(1));
+                    }
                 }
+                System.out.println("Patient saved: " + patient.getFullName());
             }
-            System.out.println("Patient saved: " + patient.getFullName());
-        }
+            return null;
+        });
     }
 
     public Patient getPatientById(int id) throws SQLException {
         String sql = "SELECT * FROM patients WHERE patient_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return mapResultSetToPatient(rs);
+        return pool.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return mapResultSetToPatient(rs);
+                    }
+                }
             }
-        }
-        return null;
+            return null;
+        });
+    }
+
+    /**
+     * Loads the given patients with one query per {@value #IN_LIST_CHUNK_SIZE} ids.
+     * Ids that do not exist are simply absent from the map.
+     */
+    public Map<Integer, Patient> getPatientsByIds(Collection<Integer> patientIds) throws SQLException {
+        return queryByIds(SQL_PATIENTS_BY_IDS, patientIds, this::mapResultSetToPatient, Patient::getPatientId);
     }
 
     public List<Patient> getAllPatients() {
         List<Patient> patients = new ArrayList<>();
-        String sql = "SELECT * FROM patients";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                patients.add(mapResultSetToPatient(rs));
-            }
+        try {
+            streamPatients(patients::add);
         } catch (SQLException e) {
             System.err.println("Error getting all patients: " + e.getMessage());
         }
         return patients;
     }
 
+    /**
+     * Feeds every patient to the consumer in id order, one row at a time, without
+     * building an intermediate list. A reader connection is held until the scan ends.
+     */
+    public void streamPatients(Consumer<? super Patient> consumer) throws SQLException {
+        forEachRow(SQL_ALL_PATIENTS, this::mapResultSetToPatient, consumer);
+    }
+
+    /**
+     * Lazily mapped stream over all patients. The stream holds a pooled reader
+     * connection and must be closed, e.g. with try-with-resources.
+     */
+    public Stream<Patient> patientStream() throws SQLException {
+        return streamRows(SQL_ALL_PATIENTS, this::mapResultSetToPatient);
+    }
+
+    /**
+     * Keyset pagination: the next {@code limit} patients with an id greater than {@code afterId}.
+     * Pass 0 for the first page and the last id of the previous page afterwards.
+     */
+    public List<Patient> getPatientsPage(int afterId, int limit) throws SQLException {
+        List<Patient> page = new ArrayList<>(limit);
+        forEachRow(SQL_PATIENTS_PAGE, this::mapResultSetToPatient, page::add, afterId, limit);
+        return page;
+    }
+
     public List<Patient> searchPatients(String searchTerm) {
+        return searchPatients(searchTerm, DEFAULT_SEARCH_LIMIT);
+    }
+
+    /**
+     * Full-text patient search over name, email and phone. Every word of the search
+     * term is matched as a token prefix ("div 983" finds Divya with phone 983-...),
+     * results are ordered by relevance and capped at {@code limit}.
+     * A blank term lists all patients, as before.
+     */
+    public List<Patient> searchPatients(String searchTerm, int limit) {
+        String matchQuery = toFtsPrefixQuery(searchTerm);
+        if (matchQuery.isEmpty()) {
+            return getAllPatients();
+        }
         List<Patient> patients = new ArrayList<>();
-        String sql = "SELECT * FROM patients WHERE first_name LIKE ? OR last_name LIKE ? OR email LIKE ? OR phone LIKE ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            String searchPattern = "%" + searchTerm + "%";
-            pstmt.setString(1, searchPattern);
-            pstmt.setString(2, searchPattern);
-            pstmt.setString(3, searchPattern);
-            pstmt.setString(4, searchPattern);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                patients.add(mapResultSetToPatient(rs));
-            }
+        try {
+            forEachRow(SQL_SEARCH_PATIENTS, this::mapResultSetToPatient, patients::add, matchQuery, limit);
         } catch (SQLException e) {
             System.err.println("Error searching patients: " + e.getMessage());
         }
         return patients;
     }
 
+    // Splits on anything that is not a letter or digit (the same boundaries the unicode61
+    // tokenizer uses) and turns each word into a quoted prefix term, so user input can never
+    // inject FTS5 query syntax.
+    private static String toFtsPrefixQuery(String searchTerm) {
+        if (searchTerm == null) {
+            return "";
+        }
+        StringBuilder query = new StringBuilder();
+        for (String token : searchTerm.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append('"').append(token).append("\"*");
+            }
+        }
+        return query.toString();
+    }
+
     public void updatePatient(Patient patient) throws SQLException {
         String sql = "UPDATE patients SET first_name=?, last_name=?, email=?, phone=?, date_of_birth=?, gender=?, address=?, existing_conditions=?, allergies=?, medications=? WHERE patient_id=?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, patient.getFirstName());
-            pstmt.setString(2, patient.getLastName());
-            pstmt.setString(3, patient.getEmail());
-            pstmt.setString(4, patient.getPhone());
-            pstmt.setString(5, patient.getDateOfBirth().toString());
-            pstmt.setString(6, patient.getGender());
-            pstmt.setString(7, patient.getAddress());
-            pstmt.setString(8, patient.getExistingConditions());
-            pstmt.setString(9, patient.getAllergies());
-            pstmt.setString(10, patient.getMedications());
-            pstmt.setInt(11, patient.getPatientId());
-            pstmt.executeUpdate();
-            System.out.println("Patient updated: " + patient.getFullName());
-        }
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                bindPatient(pstmt, patient);
+                pstmt.setInt(11, patient.getPatientId());
+                pstmt.executeUpdate();
+                System.out.println("Patient updated: " + patient.getFullName());
+            }
+            return null;
+        });
+        patientChanged(patient.getPatientId());
     }
 
     public void deletePatient(int patientId) throws SQLException {
         String sql = "DELETE FROM patients WHERE patient_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, patientId);
-            pstmt.executeUpdate();
-            System.out.println("Patient deleted: " + patientId);
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, patientId);
+                pstmt.executeUpdate();
+                System.out.println("Patient deleted: " + patientId);
+            }
+            return null;
+        });
+        patientChanged(patientId);
+    }
+
+    /**
+     * Calls {@code listener} with a patient's id after the patient is updated or deleted,
+     * or a health record is saved for them, through this service.
+     */
+    public void addPatientChangeListener(IntConsumer listener) {
+        patientChangeListeners.add(listener);
+    }
+
+    private void patientChanged(int patientId) {
+        for (IntConsumer listener : patientChangeListeners) {
+            try {
+                listener.accept(patientId);
+            } catch (RuntimeException e) {
+                System.err.println("Error notifying change of patient " + patientId + ": " + e.getMessage());
+            }
         }
     }
 
+    public BatchResult savePatients(Iterable<Patient> patients) throws SQLException {
+        return executeBatchInsert("patients", SQL_INSERT_PATIENT, patients, this::bindPatient, null, Patient::setPatientId);
+    }
+
+    private void bindPatient(PreparedStatement pstmt, Patient patient) throws SQLException {
+        pstmt.setString(1, patient.getFirstName());
+        pstmt.setString(2, patient.getLastName());
+        pstmt.setString(3, patient.getEmail());
+        pstmt.setString(4, patient.getPhone());
+        setEpochDay(pstmt, 5, patient.getDateOfBirth());
+        categories.bind(pstmt, 6, CategoryDictionary.GENDER, patient.getGender());
+        pstmt.setString(7, patient.getAddress());
+        pstmt.setString(8, patient.getExistingConditions());
+        pstmt.setString(9, patient.getAllergies());
+        pstmt.setString(10, patient.getMedications());
+    }
+
     private Patient mapResultSetToPatient(ResultSet rs) throws SQLException {
         Patient patient = new Patient();
         patient.setPatientId(rs.getInt("patient_id"));
@@ -307,8 +397,8 @@ public class DatabaseService {
         patient.setLastName(rs.getString("last_name"));
         patient.setEmail(rs.getString("email"));
         patient.setPhone(rs.getString("phone"));
-        patient.setDateOfBirth(LocalDate.parse(rs.getString("date_of_birth")));
-        patient.setGender(rs.getString("gender"));
+        patient.setDateOfBirth(getEpochDay(rs, "date_of_birth"));
+        patient.setGender(decodeCategory(rs, "gender", CategoryDictionary.GENDER));
         patient.setAddress(rs.getString("address"));
         patient.setExistingConditions(rs.getString("existing_conditions"));
         patient.setAllergies(rs.getString("allergies"));
@@ -319,66 +409,82 @@ public class DatabaseService {
     
     public void saveDoctor(Doctor doctor) throws SQLException {
         String sql = "INSERT INTO doctors (first_name, last_name, email, phone, specialization, qualification, experience_years, license_number, address, consultation_fee, working_hours_start, working_hours_end, working_days, is_available, department, biography, languages, image_url, join_date, rating, total_patients, is_active) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, doctor.getFirstName());
-            pstmt.setString(2, doctor.getLastName());
-            pstmt.setString(3, doctor.getEmail());
-            pstmt.setString(4, doctor.getPhone());
-            pstmt.setString(5, doctor.getSpecialization());
-            pstmt.setString(6, doctor.getQualification());
-            pstmt.setInt(7, doctor.getExperienceYears());
-            pstmt.setString(8, doctor.getLicenseNumber());
-            pstmt.setString(9, doctor.getAddress());
-            pstmt.setDouble(10, doctor.getConsultationFee());
-            pstmt.setString(11, doctor.getWorkingHoursStart() != null ? doctor.getWorkingHoursStart().toString() : null);
-            pstmt.setString(12, doctor.getWorkingHoursEnd() != null ? doctor.getWorkingHoursEnd().toString() : null);
-            pstmt.setString(13, String.join(",", doctor.getWorkingDays())); 
-            pstmt.setInt(14, doctor.isAvailable() ? 1 : 0);
-            pstmt.setString(15, doctor.getDepartment());
-            pstmt.setString(16, doctor.getBiography());
-            pstmt.setString(17, String.join(",", doctor.getLanguages())); 
-            pstmt.setString(18, doctor.getImageUrl());
-            pstmt.setString(19, doctor.getJoinDate() != null ? doctor.getJoinDate().toString() : null);
-            pstmt.setDouble(20, doctor.getRating());
-            pstmt.setInt(21, doctor.getTotalPatients());
-            pstmt.setInt(22, doctor.isActive() ? 1 : 0);
-            pstmt.executeUpdate();
-
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    doctor.setDoctorId(generatedKeys.getInt(1));
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, doctor.getFirstName());
+                pstmt.setString(2, doctor.getLastName());
+                pstmt.setString(3, doctor.getEmail());
+                pstmt.setString(4, doctor.getPhone());
+                pstmt.setString(5, doctor.getSpecialization());
+                pstmt.setString(6, doctor.getQualification());
+                pstmt.setInt(7, doctor.getExperienceYears());
+                pstmt.setString(8, doctor.getLicenseNumber());
+                pstmt.setString(9, doctor.getAddress());
+                pstmt.setDouble(10, doctor.getConsultationFee());
+                pstmt.setString(11, doctor.getWorkingHoursStart() != null ? doctor.getWorkingHoursStart().toString() : null);
+                pstmt.setString(12, doctor.getWorkingHoursEnd() != null ? doctor.getWorkingHoursEnd().toString() : null);
+                pstmt.setString(13, String.join(",", doctor.getWorkingDays())); 
+                pstmt.setInt(14, doctor.isAvailable() ? 1 : 0);
+                pstmt.setString(15, doctor.getDepartment());
+                pstmt.setString(16, doctor.getBiography());
+                pstmt.setString(17, String.join(",", doctor.getLanguages())); 
+                pstmt.setString(18, doctor.getImageUrl());
+                setEpochDay(pstmt, 19, doctor.getJoinDate());
+                pstmt.setDouble(20, doctor.getRating());
+                pstmt.setInt(21, doctor.getTotalPatients());
+                pstmt.setInt(22, doctor.isActive() ? 1 : 0);
+                pstmt.executeUpdate();
+
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        doctor.setDoctorId(generatedKeys.getInt(1));
+                    }
                 }
+                System.out.println("Doctor saved: " + doctor.getFullName());
             }
-            System.out.println("Doctor saved: " + doctor.getFullName());
-        }
+            return null;
+        });
     }
 
     public Doctor getDoctorById(int id) throws SQLException {
         String sql = "SELECT * FROM doctors WHERE doctor_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return mapResultSetToDoctor(rs);
+        return pool.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return mapResultSetToDoctor(rs);
+                    }
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     public List<Doctor> getAllDoctors() {
         List<Doctor> doctors = new ArrayList<>();
-        String sql = "SELECT * FROM doctors";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                doctors.add(mapResultSetToDoctor(rs));
-            }
+        try {
+            streamDoctors(doctors::add);
         } catch (SQLException e) {
             System.err.println("Error getting all doctors: " + e.getMessage());
         }
         return doctors;
     }
 
+    public void streamDoctors(Consumer<? super Doctor> consumer) throws SQLException {
+        forEachRow(SQL_ALL_DOCTORS, this::mapResultSetToDoctor, consumer);
+    }
+
+    public Stream<Doctor> doctorStream() throws SQLException {
+        return streamRows(SQL_ALL_DOCTORS, this::mapResultSetToDoctor);
+    }
+
+    public List<Doctor> getDoctorsPage(int afterId, int limit) throws SQLException {
+        List<Doctor> page = new ArrayList<>(limit);
+        forEachRow(SQL_DOCTORS_PAGE, this::mapResultSetToDoctor, page::add, afterId, limit);
+        return page;
+    }
+
     private Doctor mapResultSetToDoctor(ResultSet rs) throws SQLException {
         Doctor doctor = new Doctor();
         doctor.setDoctorId(rs.getInt("doctor_id"));
@@ -400,7 +506,7 @@ public class DatabaseService {
         doctor.setBiography(rs.getString("biography"));
         doctor.setLanguages(List.of(rs.getString("languages").split(",")));
         doctor.setImageUrl(rs.getString("image_url"));
-        doctor.setJoinDate(rs.getString("join_date") != null ? LocalDate.parse(rs.getString("join_date")) : null);
+        doctor.setJoinDate(getEpochDay(rs, "join_date"));
         doctor.setRating(rs.getDouble("rating"));
         doctor.setTotalPatients(rs.getInt("total_patients"));
         doctor.setActive(rs.getInt("is_active") == 1);
@@ -409,104 +515,278 @@ public class DatabaseService {
 
     
     public void saveAppointment(Appointment appointment) throws SQLException {
-        String sql = "INSERT INTO appointments (patient_id, patient_name, doctor_id, doctor_name, doctor_specialization, appointment_type, appointment_datetime, duration_minutes, status, notes, symptoms, diagnosis, prescription, consultation_fee, is_emergency, created_date, last_modified) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setInt(1, appointment.getPatientId());
-            pstmt.setString(2, appointment.getPatientName());
-            pstmt.setInt(3, appointment.getDoctorId());
-            pstmt.setString(4, appointment.getDoctorName());
-            pstmt.setString(5, appointment.getDoctorSpecialization());
-            pstmt.setString(6, appointment.getAppointmentType());
-            pstmt.setString(7, appointment.getAppointmentDate().toString());
-            pstmt.setInt(8, appointment.getDurationMinutes());
-            pstmt.setString(9, appointment.getStatus());
-            pstmt.setString(10, appointment.getNotes());
-            pstmt.setString(11, appointment.getSymptoms());
-            pstmt.setString(12, appointment.getDiagnosis());
-            pstmt.setString(13, appointment.getPrescription());
-            pstmt.setDouble(14, appointment.getConsultationFee());
-            pstmt.setInt(15, appointment.isEmergency() ? 1 : 0);
-            pstmt.setString(16, appointment.getCreatedDate().toString());
-            pstmt.setString(17, appointment.getLastModified().toString());
-            pstmt.executeUpdate();
-
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    appointment.setAppointmentId(generatedKeys.getInt(1));
+        String sql = SQL_INSERT_APPOINTMENT;
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                bindAppointment(pstmt, appointment);
+                pstmt.executeUpdate();
+
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        appointment.setAppointmentId(generatedKeys.getInt(1));
+                    }
                 }
+                System.out.println("Appointment saved: " + appointment.getAppointmentId());
             }
-            System.out.println("Appointment saved: " + appointment.getAppointmentId());
-        }
+            return null;
+        });
     }
 
     public Appointment getAppointmentById(int id) throws SQLException {
         String sql = "SELECT * FROM appointments WHERE appointment_id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return mapResultSetToAppointment(rs);
+        return pool.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return mapResultSetToAppointment(rs);
+                    }
+                }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
     public List<Appointment> getAllAppointments() {
         List<Appointment> appointments = new ArrayList<>();
-        String sql = "SELECT * FROM appointments";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                appointments.add(mapResultSetToAppointment(rs));
-            }
+        try {
+            streamAppointments(appointments::add);
         } catch (SQLException e) {
             System.err.println("Error getting all appointments: " + e.getMessage());
         }
         return appointments;
     }
 
+    public void streamAppointments(Consumer<? super Appointment> consumer) throws SQLException {
+        forEachRow(SQL_ALL_APPOINTMENTS, this::mapResultSetToAppointment, consumer);
+    }
+
+    public Stream<Appointment> appointmentStream() throws SQLException {
+        return streamRows(SQL_ALL_APPOINTMENTS, this::mapResultSetToAppointment);
+    }
+
+    public List<Appointment> getAppointmentsPage(int afterId, int limit) throws SQLException {
+        List<Appointment> page = new ArrayList<>(limit);
+        forEachRow(SQL_APPOINTMENTS_PAGE, this::mapResultSetToAppointment, page::add, afterId, limit);
+        return page;
+    }
+
     public void updateAppointment(Appointment appointment) throws SQLException {
-        String sql = "UPDATE appointments SET patient_id=?, patient_name=?, doctor_id=?, doctor_name=?, doctor_specialization=?, appointment_type=?, appointment_datetime=?, duration_minutes=?, status=?, notes=?, symptoms=?, diagnosis=?, prescription=?, consultation_fee=?, is_emergency=?, last_modified=? WHERE appointment_id=?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, appointment.getPatientId());
-            pstmt.setString(2, appointment.getPatientName());
-            pstmt.setInt(3, appointment.getDoctorId());
-            pstmt.setString(4, appointment.getDoctorName());
-            pstmt.setString(5, appointment.getDoctorSpecialization());
-            pstmt.setString(6, appointment.getAppointmentType());
-            pstmt.setString(7, appointment.getAppointmentDate().toString());
-            pstmt.setInt(8, appointment.getDurationMinutes());
-            pstmt.setString(9, appointment.getStatus());
-            pstmt.setString(10, appointment.getNotes());
-            pstmt.setString(11, appointment.getSymptoms());
-            pstmt.setString(12, appointment.getDiagnosis());
-            pstmt.setString(13, appointment.getPrescription());
-            pstmt.setDouble(14, appointment.getConsultationFee());
-            pstmt.setInt(15, appointment.isEmergency() ? 1 : 0);
-            pstmt.setString(16, LocalDateTime.now().toString()); 
-            pstmt.setInt(17, appointment.getAppointmentId());
-            pstmt.executeUpdate();
-            System.out.println("Appointment updated: " + appointment.getAppointmentId());
-        }
+        String sql = "UPDATE appointments SET patient_id=?, patient_name=?, doctor_id=?, doctor_name=?, doctor_specialization=?, appointment_type=?, appointment_datetime=?, duration_minutes=?, status=?, notes=?, symptoms=?, diagnosis=?, prescription=?, consultation_fee=?, is_emergency=?, last_modified=?, patient_rating=? WHERE appointment_id=?";
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, appointment.getPatientId());
+                pstmt.setString(2, appointment.getPatientName());
+                pstmt.setInt(3, appointment.getDoctorId());
+                pstmt.setString(4, appointment.getDoctorName());
+                pstmt.setString(5, appointment.getDoctorSpecialization());
+                pstmt.setString(6, appointment.getAppointmentType());
+                setEpochSecond(pstmt, 7, appointment.getAppointmentDate());
+                pstmt.setInt(8, appointment.getDurationMinutes());
+                categories.bind(pstmt, 9, CategoryDictionary.APPOINTMENT_STATUS, appointment.getStatus());
+                pstmt.setString(10, appointment.getNotes());
+                pstmt.setString(11, appointment.getSymptoms());
+                pstmt.setString(12, appointment.getDiagnosis());
+                pstmt.setString(13, appointment.getPrescription());
+                pstmt.setDouble(14, appointment.getConsultationFee());
+                pstmt.setInt(15, appointment.isEmergency() ? 1 : 0);
+                setEpochSecond(pstmt, 16, LocalDateTime.now());
+                setRating(pstmt, 17, appointment.getPatientRating());
+                pstmt.setInt(18, appointment.getAppointmentId());
+                pstmt.executeUpdate();
+                System.out.println("Appointment updated: " + appointment.getAppointmentId());
+            }
+            return null;
+        });
     }
     
     public void updateAppointmentStatus(int appointmentId, String status) throws SQLException {
         String sql = "UPDATE appointments SET status = ?, last_modified = ? WHERE appointment_id = ?";
         
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, status);
-            pstmt.setString(2, LocalDateTime.now().toString());
-            pstmt.setInt(3, appointmentId);
-            pstmt.executeUpdate();
-            System.out.println("Appointment " + appointmentId + " status updated to " + status);
-        }
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                categories.bind(pstmt, 1, CategoryDictionary.APPOINTMENT_STATUS, status);
+                setEpochSecond(pstmt, 2, LocalDateTime.now());
+                pstmt.setInt(3, appointmentId);
+                pstmt.executeUpdate();
+                System.out.println("Appointment " + appointmentId + " status updated to " + status);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Highest appointment id ever handed out, including ids of deleted rows, so ids
+     * assigned in memory ahead of the insert never collide with an existing or past row.
+     */
+    public int getAppointmentIdHighWaterMark() throws SQLException {
+        String sql = "SELECT MAX(COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'appointments'), 0), "
+                   + "COALESCE((SELECT MAX(appointment_id) FROM appointments), 0))";
+        return pool.read(connection -> {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    public Map<Integer, Appointment> getAppointmentsByIds(Collection<Integer> appointmentIds) throws SQLException {
+        return queryByIds(SQL_APPOINTMENTS_BY_IDS, appointmentIds, this::mapResultSetToAppointment, Appointment::getAppointmentId);
+    }
+
+    /**
+     * Inserts every occurrence of a recurring series with one batched statement in a
+     * single transaction: either all rows are saved or, on any failure, none is.
+     */
+    public void saveAppointmentSeries(List<Appointment> series) throws SQLException {
+        pool.write(connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(SQL_INSERT_APPOINTMENT)) {
+                for (Appointment appointment : series) {
+                    bindAppointment(pstmt, appointment);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                categories.reload(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+        System.out.println("Appointment series saved: " + series.size() + " occurrences");
+    }
+
+    /**
+     * Sets the status of several appointments in one transaction.
+     */
+    public void updateAppointmentStatuses(Collection<Integer> appointmentIds, String status) throws SQLException {
+        String sql = "UPDATE appointments SET status = ?, last_modified = ? WHERE appointment_id = ?";
+        inTransaction(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                LocalDateTime now = LocalDateTime.now();
+                for (int appointmentId : appointmentIds) {
+                    categories.bind(pstmt, 1, CategoryDictionary.APPOINTMENT_STATUS, status);
+                    setEpochSecond(pstmt, 2, now);
+                    pstmt.setInt(3, appointmentId);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            return null;
+        });
+        System.out.println(appointmentIds.size() + " appointments updated to " + status);
+    }
+
+    public List<Appointment> getAppointmentsInSeries(int seriesId) throws SQLException {
+        List<Appointment> appointments = new ArrayList<>();
+        forEachRow(SQL_APPOINTMENTS_IN_SERIES, this::mapResultSetToAppointment, appointments::add, seriesId);
+        return appointments;
+    }
+
+    /**
+     * Appointments starting at or after {@code from} and before {@code to}, earliest first.
+     */
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) throws SQLException {
+        List<Appointment> appointments = new ArrayList<>();
+        forEachRow(SQL_APPOINTMENTS_BETWEEN, this::mapResultSetToAppointment, appointments::add,
+                from.toEpochSecond(ZoneOffset.UTC), to.toEpochSecond(ZoneOffset.UTC));
+        return appointments;
+    }
+
+    /**
+     * Appointments whose status equals {@code status} ignoring case, starting at or after
+     * {@code from} and before {@code to}. Pass {@code LocalDateTime.MIN} or {@code MAX}
+     * for an open end.
+     */
+    public void streamAppointmentsWithStatusBetween(String status, LocalDateTime from, LocalDateTime to,
+                                                    Consumer<? super Appointment> consumer) throws SQLException {
+        List<Object> params = new ArrayList<>(categories.codesIgnoringCase(CategoryDictionary.APPOINTMENT_STATUS, status));
+        String sql = String.format(SQL_APPOINTMENTS_WITH_STATUS_BETWEEN, placeholders(params.size()));
+        params.add(from.toEpochSecond(ZoneOffset.UTC));
+        params.add(to.toEpochSecond(ZoneOffset.UTC));
+        forEachRow(sql, this::mapResultSetToAppointment, consumer, params.toArray());
+    }
+
+    /**
+     * Grouped counts and fees of the appointments an in-memory window from
+     * {@code windowStart} to {@code windowEnd} does not hold: undated ones, ones starting
+     * at or after the end, and ones before the start that are no longer scheduled.
+     */
+    public void streamAppointmentHistorySummaries(LocalDateTime windowStart, LocalDateTime windowEnd,
+                                                  Consumer<? super AppointmentSummary> consumer) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        params.add(windowEnd.toEpochSecond(ZoneOffset.UTC));
+        params.add(windowStart.toEpochSecond(ZoneOffset.UTC));
+        List<Integer> scheduled = categories.codesIgnoringCase(CategoryDictionary.APPOINTMENT_STATUS, "Scheduled");
+        params.addAll(scheduled);
+        String sql = String.format(SQL_APPOINTMENT_HISTORY_SUMMARIES, placeholders(scheduled.size()));
+        forEachRow(sql, rs -> new AppointmentSummary(
+                decodeCategory(rs, "status", CategoryDictionary.APPOINTMENT_STATUS),
+                rs.getString("appointment_type"),
+                rs.getString("doctor_name"),
+                getEpochDay(rs, "epoch_day"),
+                rs.getInt("appointment_count"),
+                rs.getLong("fee_cents")), consumer, params.toArray());
     }
 
     public void deleteAllAppointments() throws SQLException {
         String sql = "DELETE FROM appointments;";
-        try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate(sql);
-            System.out.println("All appointments deleted from database.");
+        pool.write(connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate(sql);
+                System.out.println("All appointments deleted from database.");
+            }
+            return null;
+        });
+    }
+
+    public BatchResult saveAppointments(Iterable<Appointment> appointments) throws SQLException {
+        return executeBatchInsert("appointments", SQL_INSERT_APPOINTMENT, appointments, this::bindAppointment,
+                Appointment::getAppointmentId, Appointment::setAppointmentId);
+    }
+
+    private void bindAppointment(PreparedStatement pstmt, Appointment appointment) throws SQLException {
+        // A preassigned id (write-behind, recurring series) is kept; otherwise SQLite assigns one.
+        if (appointment.getAppointmentId() > 0) {
+            pstmt.setInt(1, appointment.getAppointmentId());
+        } else {
+            pstmt.setNull(1, Types.INTEGER);
+        }
+        pstmt.setInt(2, appointment.getPatientId());
+        pstmt.setString(3, appointment.getPatientName());
+        pstmt.setInt(4, appointment.getDoctorId());
+        pstmt.setString(5, appointment.getDoctorName());
+        pstmt.setString(6, appointment.getDoctorSpecialization());
+        pstmt.setString(7, appointment.getAppointmentType());
+        setEpochSecond(pstmt, 8, appointment.getAppointmentDate());
+        pstmt.setInt(9, appointment.getDurationMinutes());
+        categories.bind(pstmt, 10, CategoryDictionary.APPOINTMENT_STATUS, appointment.getStatus());
+        pstmt.setString(11, appointment.getNotes());
+        pstmt.setString(12, appointment.getSymptoms());
+        pstmt.setString(13, appointment.getDiagnosis());
+        pstmt.setString(14, appointment.getPrescription());
+        pstmt.setDouble(15, appointment.getConsultationFee());
+        pstmt.setInt(16, appointment.isEmergency() ? 1 : 0);
+        setEpochSecond(pstmt, 17, appointment.getCreatedDate());
+        setEpochSecond(pstmt, 18, appointment.getLastModified());
+        if (appointment.getSeriesId() > 0) {
+            pstmt.setInt(19, appointment.getSeriesId());
+        } else {
+            pstmt.setNull(19, Types.INTEGER);
+        }
+        setRating(pstmt, 20, appointment.getPatientRating());
+    }
+
+    private static void setRating(PreparedStatement pstmt, int index, double rating) throws SQLException {
+        if (rating > 0) {
+            pstmt.setDouble(index, rating);
+        } else {
+            pstmt.setNull(index, Types.REAL);
         }
     }
 
@@ -519,52 +799,87 @@ public class DatabaseService {
         appointment.setDoctorName(rs.getString("doctor_name"));
         appointment.setDoctorSpecialization(rs.getString("doctor_specialization"));
         appointment.setAppointmentType(rs.getString("appointment_type"));
-        appointment.setAppointmentDate(LocalDateTime.parse(rs.getString("appointment_datetime")));
+        appointment.setAppointmentDate(getEpochSecond(rs, "appointment_datetime"));
         appointment.setDurationMinutes(rs.getInt("duration_minutes"));
-        appointment.setStatus(rs.getString("status"));
+        appointment.setStatus(decodeCategory(rs, "status", CategoryDictionary.APPOINTMENT_STATUS));
         appointment.setNotes(rs.getString("notes"));
         appointment.setSymptoms(rs.getString("symptoms"));
         appointment.setDiagnosis(rs.getString("diagnosis"));
         appointment.setPrescription(rs.getString("prescription"));
         appointment.setConsultationFee(rs.getDouble("consultation_fee"));
         appointment.setEmergency(rs.getInt("is_emergency") == 1);
-        appointment.setCreatedDate(LocalDateTime.parse(rs.getString("created_date")));
-        appointment.setLastModified(LocalDateTime.parse(rs.getString("last_modified")));
+        appointment.setCreatedDate(getEpochSecond(rs, "created_date"));
+        appointment.setLastModified(getEpochSecond(rs, "last_modified"));
+        appointment.setSeriesId(rs.getInt("series_id"));
+        appointment.setPatientRating(rs.getDouble("patient_rating"));
         return appointment;
     }
 
     
     public void saveHealthRecord(HealthRecord record) throws SQLException {
-        String sql = "INSERT INTO health_records (patient_id, record_date, heart_rate, systolic_bp, diastolic_bp, blood_sugar, cholesterol, temperature, symptoms, diagnosis, medication, smoking_status, exercise_frequency, stress_level, notes) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, record.getPatientId());
-            pstmt.setString(2, record.getRecordDate().toString());
-            pstmt.setDouble(3, record.getHeartRate());
-            pstmt.setDouble(4, record.getSystolicBP());
-            pstmt.setDouble(5, record.getDiastolicBP());
-            pstmt.setDouble(6, record.getBloodSugar());
-            pstmt.setDouble(7, record.getCholesterol());
-            pstmt.setDouble(8, record.getTemperature());
-            pstmt.setString(9, record.getSymptoms());
-            pstmt.setString(10, record.getDiagnosis());
-            pstmt.setString(11, record.getMedication());
-            pstmt.setString(12, record.getSmokingStatus());
-            pstmt.setString(13, record.getExerciseFrequency());
-            pstmt.setInt(14, record.getStressLevel());
-            pstmt.setString(15, record.getNotes()); // Add this line
-            pstmt.executeUpdate();
+        String sql = SQL_INSERT_HEALTH_RECORD;
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                bindHealthRecord(pstmt, record);
+                pstmt.executeUpdate();
+            }
+            return null;
+        });
+        patientChanged(record.getPatientId());
+    }
+
+    /**
+     * Inserts health records in chunked transactions (see {@link #setBatchChunkSize(int)}),
+     * one commit per chunk instead of one per row. Generated ids are written back to
+     * the records; rows that fail are reported in the result and do not abort the import.
+     */
+    public BatchResult saveHealthRecords(Iterable<HealthRecord> records) throws SQLException {
+        // Collected while binding, since records may be a one-shot Iterable. A patient is
+        // notified even if the import fails part way; dropping a prediction is harmless.
+        Set<Integer> patientIds = new LinkedHashSet<>();
+        try {
+            return executeBatchInsert("health_records", SQL_INSERT_HEALTH_RECORD, records, (pstmt, record) -> {
+                patientIds.add(record.getPatientId());
+                bindHealthRecord(pstmt, record);
+            }, null, HealthRecord::setRecordId);
+        } finally {
+            patientIds.forEach(this::patientChanged);
         }
     }
 
+    private void bindHealthRecord(PreparedStatement pstmt, HealthRecord record) throws SQLException {
+        pstmt.setInt(1, record.getPatientId());
+        setEpochDay(pstmt, 2, record.getRecordDate());
+        pstmt.setDouble(3, record.getHeartRate());
+        pstmt.setDouble(4, record.getSystolicBP());
+        pstmt.setDouble(5, record.getDiastolicBP());
+        pstmt.setDouble(6, record.getBloodSugar());
+        pstmt.setDouble(7, record.getCholesterol());
+        pstmt.setDouble(8, record.getTemperature());
+        pstmt.setString(9, record.getSymptoms());
+        pstmt.setString(10, record.getDiagnosis());
+        pstmt.setString(11, record.getMedication());
+        categories.bind(pstmt, 12, CategoryDictionary.SMOKING_STATUS, record.getSmokingStatus());
+        categories.bind(pstmt, 13, CategoryDictionary.EXERCISE_FREQUENCY, record.getExerciseFrequency());
+        pstmt.setInt(14, record.getStressLevel());
+        pstmt.setString(15, record.getNotes());
+    }
+
     public List<HealthRecord> getHealthRecordsForPatient(int patientId) {
         List<HealthRecord> records = new ArrayList<>();
-        String sql = "SELECT * FROM health_records WHERE patient_id = ? ORDER BY record_date DESC";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, patientId);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                records.add(mapResultSetToHealthRecord(rs));
-            }
+        String sql = SQL_HEALTH_RECORDS_FOR_PATIENT;
+        try {
+            pool.read(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                    pstmt.setInt(1, patientId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            records.add(mapResultSetToHealthRecord(rs));
+                        }
+                    }
+                }
+                return null;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting health records: " + e.getMessage());
         }
@@ -572,22 +887,59 @@ public class DatabaseService {
     }
 
     public HealthRecord getLatestHealthRecordForPatient(int patientId) throws SQLException {
-        String sql = "SELECT * FROM health_records WHERE patient_id = ? ORDER BY record_date DESC LIMIT 1";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, patientId);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return mapResultSetToHealthRecord(rs);
+        String sql = SQL_LATEST_HEALTH_RECORD;
+        return pool.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, patientId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        return mapResultSetToHealthRecord(rs);
+                    }
+                }
             }
-        }
-        return null;
+            return null;
+        });
+    }
+
+    /**
+     * Feeds every health record, in id order, to the consumer together with its patient,
+     * for building training data. Only the patient's id, date of birth, allergies and
+     * medications are filled in. A reader connection is held until the scan ends.
+     */
+    public void streamHealthRecordsWithPatients(BiConsumer<? super Patient, ? super HealthRecord> consumer) throws SQLException {
+        pool.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(SQL_HEALTH_RECORDS_WITH_PATIENTS)) {
+                pstmt.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        HealthRecord record = mapResultSetToHealthRecord(rs);
+                        Patient patient = new Patient();
+                        patient.setPatientId(record.getPatientId());
+                        patient.setDateOfBirth(getEpochDay(rs, "date_of_birth"));
+                        patient.setAllergies(rs.getString("allergies"));
+                        patient.setMedications(rs.getString("medications"));
+                        consumer.accept(patient, record);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Latest health record (by record date, then id) for each of the given patients,
+     * using one windowed query per {@value #IN_LIST_CHUNK_SIZE} ids. Patients without
+     * records are absent from the map.
+     */
+    public Map<Integer, HealthRecord> getLatestHealthRecordsForPatients(Collection<Integer> patientIds) throws SQLException {
+        return queryByIds(SQL_LATEST_HEALTH_RECORDS_BY_PATIENTS, patientIds, this::mapResultSetToHealthRecord, HealthRecord::getPatientId);
     }
 
     private HealthRecord mapResultSetToHealthRecord(ResultSet rs) throws SQLException {
         HealthRecord record = new HealthRecord();
         record.setRecordId(rs.getInt("record_id"));
         record.setPatientId(rs.getInt("patient_id"));
-        record.setRecordDate(LocalDate.parse(rs.getString("record_date")));
+        record.setRecordDate(getEpochDay(rs, "record_date"));
         record.setHeartRate(rs.getDouble("heart_rate"));
         record.setSystolicBP(rs.getDouble("systolic_bp"));
         record.setDiastolicBP(rs.getDouble("diastolic_bp"));
@@ -597,17 +949,382 @@ public class DatabaseService {
         record.setSymptoms(rs.getString("symptoms"));
         record.setDiagnosis(rs.getString("diagnosis"));
         record.setMedication(rs.getString("medication"));
-        record.setSmokingStatus(rs.getString("smoking_status"));
-        record.setExerciseFrequency(rs.getString("exercise_frequency"));
+        record.setSmokingStatus(decodeCategory(rs, "smoking_status", CategoryDictionary.SMOKING_STATUS));
+        record.setExerciseFrequency(decodeCategory(rs, "exercise_frequency", CategoryDictionary.EXERCISE_FREQUENCY));
         record.setStressLevel(rs.getInt("stress_level"));
         record.setNotes(rs.getString("notes"));
         return record;
     }
     
+    // Dates are stored as epoch days and timestamps as epoch seconds. LocalDateTime values
+    // are zone-less, so they are encoded as if UTC; sub-second precision is not kept.
+    private static void setEpochDay(PreparedStatement pstmt, int index, LocalDate date) throws SQLException {
+        if (date == null) {
+            pstmt.setNull(index, Types.INTEGER);
+        } else {
+            pstmt.setLong(index, date.toEpochDay());
+        }
+    }
+
+    private static void setEpochSecond(PreparedStatement pstmt, int index, LocalDateTime dateTime) throws SQLException {
+        if (dateTime == null) {
+            pstmt.setNull(index, Types.INTEGER);
+        } else {
+            pstmt.setLong(index, dateTime.toEpochSecond(ZoneOffset.UTC));
+        }
+    }
+
+    private static LocalDate getEpochDay(ResultSet rs, String column) throws SQLException {
+        long epochDay = rs.getLong(column);
+        return rs.wasNull() ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static LocalDateTime getEpochSecond(ResultSet rs, String column) throws SQLException {
+        long epochSecond = rs.getLong(column);
+        return rs.wasNull() ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    private String decodeCategory(ResultSet rs, String column, String category) throws SQLException {
+        int code = rs.getInt(column);
+        return categories.decode(category, code, rs.wasNull(), rs.getStatement().getConnection());
+    }
+
+    private <T> Map<Integer, T> queryByIds(String sqlTemplate, Collection<Integer> ids, RowMapper<T> mapper,
+                                           ToIntFunction<T> keyOf) throws SQLException {
+        List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Integer, T> results = new HashMap<>(Math.max(16, distinctIds.size() * 2));
+        if (distinctIds.isEmpty()) {
+            return results;
+        }
+        pool.read(connection -> {
+            for (int from = 0; from < distinctIds.size(); from += IN_LIST_CHUNK_SIZE) {
+                List<Integer> chunk = distinctIds.subList(from, Math.min(from + IN_LIST_CHUNK_SIZE, distinctIds.size()));
+                try (PreparedStatement pstmt = connection.prepareStatement(String.format(sqlTemplate, placeholders(chunk.size())))) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            T item = mapper.map(rs);
+                            results.put(keyOf.applyAsInt(item), item);
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+        return results;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private <T> void forEachRow(String sql, RowMapper<T> mapper, Consumer<? super T> consumer, Object... params) throws SQLException {
+        pool.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setObject(i + 1, params[i]);
+                }
+                pstmt.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(mapper.map(rs));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    // The connection, statement and result set stay open until the stream is closed;
+    // rows are mapped only as the stream pulls them.
+    private <T> Stream<T> streamRows(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        Connection connection = pool.borrowReader();
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            pstmt = connection.prepareStatement(sql);
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
+            pstmt.setFetchSize(STREAM_FETCH_SIZE);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(rs, pstmt);
+            pool.releaseReader(connection);
+            throw e;
+        }
+
+        ResultSet cursor = rs;
+        PreparedStatement statement = pstmt;
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                    action.accept(mapper.map(cursor));
+                    return true;
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error reading result stream: " + e.getMessage(), e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            closeQuietly(cursor, statement);
+            pool.releaseReader(connection);
+        });
+    }
+
+    private void closeQuietly(ResultSet rs, Statement stmt) {
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error closing result stream: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the work on the writer connection inside a single transaction, committing on
+     * success and rolling back on any failure. DatabaseService write methods called from
+     * inside the work join the same transaction.
+     */
+    public <T> T inTransaction(ConnectionPool.SqlWork<T> work) throws SQLException {
+        return pool.write(connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.apply(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                categories.reload(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    /**
+     * Records a write that could not be applied so it can be inspected and replayed later.
+     */
+    public void saveFailedWrite(String entity, int entityId, String operation, String payload, String error) throws SQLException {
+        String sql = "INSERT INTO failed_writes (entity, entity_id, operation, payload, error, failed_at) VALUES (?, ?, ?, ?, ?, ?)";
+        pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, entity);
+                pstmt.setInt(2, entityId);
+                pstmt.setString(3, operation);
+                pstmt.setString(4, payload);
+                pstmt.setString(5, error);
+                pstmt.setString(6, LocalDateTime.now().toString());
+                pstmt.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    public int getBatchChunkSize() {
+        return batchChunkSize;
+    }
+
+    public void setBatchChunkSize(int batchChunkSize) {
+        if (batchChunkSize < 1) {
+            throw new IllegalArgumentException("batchChunkSize must be at least 1");
+        }
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    private <T> BatchResult executeBatchInsert(String table, String sql, Iterable<T> items,
+                                               RowBinder<T> binder, ToIntFunction<T> presetKey,
+                                               ObjIntConsumer<T> keySetter) throws SQLException {
+        int chunkSize = batchChunkSize;
+        BatchResult result = pool.write(connection -> {
+            BatchResult.Builder builder = new BatchResult.Builder();
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql);
+                 PreparedStatement lastId = connection.prepareStatement("SELECT last_insert_rowid()")) {
+                List<T> chunk = new ArrayList<>(Math.min(chunkSize, 4096));
+                for (T item : items) {
+                    chunk.add(item);
+                    if (chunk.size() == chunkSize) {
+                        insertChunk(connection, pstmt, lastId, chunk, binder, presetKey, keySetter, builder);
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    insertChunk(connection, pstmt, lastId, chunk, binder, presetKey, keySetter, builder);
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                categories.reload(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return builder.build();
+        });
+        System.out.println("Batch insert into " + table + ": " + result.getSucceeded() + " of " + result.getAttempted()
+                + " rows saved" + (result.hasFailures() ? ", " + result.getFailures().size() + " failed" : ""));
+        return result;
+    }
+
+    // Whole chunk as one executeBatch + commit. Rowids of an AUTOINCREMENT table inserted by the
+    // single writer inside one transaction are consecutive, so the keys are derived from
+    // last_insert_rowid(). Rows that bring their own id keep it; a chunk mixing preset and
+    // generated ids, or a failed batch, is replayed row by row to get exact keys and isolate bad rows.
+    private <T> void insertChunk(Connection connection, PreparedStatement pstmt, PreparedStatement lastId, List<T> chunk,
+                                 RowBinder<T> binder, ToIntFunction<T> presetKey, ObjIntConsumer<T> keySetter,
+                                 BatchResult.Builder builder) throws SQLException {
+        int baseIndex = builder.size();
+        int presetCount = 0;
+        if (presetKey != null) {
+            for (T item : chunk) {
+                if (presetKey.applyAsInt(item) > 0) {
+                    presetCount++;
+                }
+            }
+        }
+        boolean mixedKeys = presetCount > 0 && presetCount < chunk.size();
+        if (!mixedKeys) {
+            try {
+                for (T item : chunk) {
+                    binder.bind(pstmt, item);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                int lastKey = queryLastInsertId(lastId);
+                connection.commit();
+                int firstKey = lastKey - chunk.size() + 1;
+                for (int i = 0; i < chunk.size(); i++) {
+                    int key = presetCount > 0 ? presetKey.applyAsInt(chunk.get(i)) : firstKey + i;
+                    keySetter.accept(chunk.get(i), key);
+                    builder.addKey(key);
+                }
+                return;
+            } catch (SQLException batchFailure) {
+                pstmt.clearBatch();
+                connection.rollback();
+                categories.reload(connection);
+            }
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            T item = chunk.get(i);
+            try {
+                binder.bind(pstmt, item);
+                pstmt.executeUpdate();
+                int key = queryLastInsertId(lastId);
+                keySetter.accept(item, key);
+                builder.addKey(key);
+            } catch (SQLException rowFailure) {
+                builder.addFailure(baseIndex + i, rowFailure.getMessage());
+            }
+        }
+        connection.commit();
+    }
+
+    private int queryLastInsertId(PreparedStatement lastId) throws SQLException {
+        try (ResultSet rs = lastId.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+    
+    public List<ChangeLogEntry> pollChanges(long sinceSeq) throws SQLException {
+        return pollChanges(sinceSeq, DEFAULT_POLL_LIMIT);
+    }
+
+    /**
+     * Changes to appointments, patients and health records with a sequence number
+     * above {@code sinceSeq}, oldest first, at most {@code limit} of them. Before relying
+     * on the result, a reader that has been away for a while should compare its cursor
+     * with {@link #getOldestChangeSeq()}: entries older than the retention period are compacted.
+     */
+    public List<ChangeLogEntry> pollChanges(long sinceSeq, int limit) throws SQLException {
+        List<ChangeLogEntry> changes = new ArrayList<>();
+        forEachRow(SQL_POLL_CHANGES, rs -> new ChangeLogEntry(rs.getLong(1), rs.getString(2), rs.getInt(3),
+                ChangeLogEntry.Operation.valueOf(rs.getString(4))), changes::add, sinceSeq, limit);
+        return changes;
+    }
+
+    /**
+     * Lowest sequence number still in the change log, or 0 if nothing was ever logged.
+     * A cursor below {@code getOldestChangeSeq() - 1} has missed compacted changes.
+     */
+    public long getOldestChangeSeq() throws SQLException {
+        return querySingleLong("SELECT COALESCE(MIN(seq), 0) FROM change_log");
+    }
+
+    /**
+     * Sequence number of the most recent change; read it before a full load to get a
+     * cursor from which {@link #pollChanges(long)} can continue.
+     */
+    public long getLatestChangeSeq() throws SQLException {
+        return querySingleLong("SELECT COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'change_log'), 0)");
+    }
+
+    /**
+     * Deletes change log entries older than the retention period. The newest entry is
+     * always kept so that {@link #getOldestChangeSeq()} can still reveal a gap.
+     */
+    public int compactChangeLog(long retentionSeconds) throws SQLException {
+        String sql = "DELETE FROM change_log WHERE seq <= (SELECT MAX(seq) FROM change_log WHERE changed_at < ?) "
+                   + "AND seq < (SELECT MAX(seq) FROM change_log)";
+        long cutoff = Instant.now().getEpochSecond() - retentionSeconds;
+        return pool.write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setLong(1, cutoff);
+                return pstmt.executeUpdate();
+            }
+        });
+    }
+
+    private void startChangeLogCompaction() {
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                int removed = compactChangeLog(CHANGE_LOG_RETENTION_SECONDS);
+                if (removed > 0) {
+                    System.out.println("Compacted change log: " + removed + " entries removed");
+                }
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Change log compaction failed: " + e.getMessage());
+            }
+        }, CHANGE_LOG_COMPACTION_INTERVAL_SECONDS, CHANGE_LOG_COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private long querySingleLong(String sql) throws SQLException {
+        return pool.read(connection -> {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+    }
+
     public void closeConnection() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+            maintenance = null;
+        }
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+            if (pool != null) {
+                pool.close();
+                pool = null;
                 System.out.println("Database connection closed.");
             }
         } catch (SQLException e) {
@@ -617,16 +1334,43 @@ public class DatabaseService {
 
     public List<Appointment> getAppointmentsForPatient(int patientId) {
         List<Appointment> appointments = new ArrayList<>();
-        String sql = "SELECT * FROM appointments WHERE patient_id = ? ORDER BY appointment_datetime DESC";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, patientId);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                appointments.add(mapResultSetToAppointment(rs));
-            }
+        String sql = SQL_APPOINTMENTS_FOR_PATIENT;
+        try {
+            pool.read(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                    pstmt.setInt(1, patientId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            appointments.add(mapResultSetToAppointment(rs));
+                        }
+                    }
+                }
+                return null;
+            });
         } catch (SQLException e) {
             System.err.println("Error getting appointments for patient: " + e.getMessage());
         }
         return appointments;
     }
+
+    public List<Appointment> getAppointmentsForDoctor(int doctorId) {
+        List<Appointment> appointments = new ArrayList<>();
+        String sql = SQL_APPOINTMENTS_FOR_DOCTOR;
+        try {
+            pool.read(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                    pstmt.setInt(1, doctorId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            appointments.add(mapResultSetToAppointment(rs));
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error getting appointments for doctor: " + e.getMessage());
+        }
+        return appointments;
+    }
 }
\ No newline at end of file
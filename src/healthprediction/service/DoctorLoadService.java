@@ -0,0 +1,389 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+import com.healthprediction.model.Doctor;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Per-doctor load, kept up to date from {@link AppointmentListener} events instead of by
+ * scanning appointments: minutes booked per day, number of scheduled appointments and a
+ * rolling rating, which starts from the doctor's stored rating and takes in the patient
+ * rating of each appointment completed with one. For each specialization and day asked
+ * about, the doctors working that day sit in an indexed min-heap ordered by minutes
+ * booked that day, then by scheduled appointments, then by rating (best first). A booking
+ * change moves the doctor within each of the specialization's day heaps in O(log n), and
+ * {@link #recommendDoctors} reads the top of one heap. After the appointments are
+ * reloaded, the first recommendation re-reads the doctors from the database.
+ *
+ * <p>A day heap is built on the first request for that day and only the most recently
+ * requested days are kept, {@code healthprediction.doctorLoad.maxDays} (default 64) per
+ * specialization.
+ */
+public class DoctorLoadService {
+    private static final int MAX_DAY_HEAPS = Integer.getInteger("healthprediction.doctorLoad.maxDays", 64);
+    private static final double RATING_WEIGHT = 0.1;
+
+    private static final class Load {
+        final int doctorId;
+        Doctor doctor;
+        String specialization;
+        Set<DayOfWeek> workingDays = EnumSet.noneOf(DayOfWeek.class);
+        final IntObjectMap<int[]> minutesByDay = new IntObjectMap<>();
+        int scheduled;
+        double rating;
+
+        Load(int doctorId) {
+            this.doctorId = doctorId;
+        }
+
+        int minutesOn(int day) {
+            int[] minutes = minutesByDay.get(day);
+            return minutes != null ? minutes[0] : 0;
+        }
+
+        void addMinutes(int day, int minutes) {
+            int[] total = minutesByDay.computeIfAbsent(day, d -> new int[1]);
+            total[0] += minutes;
+            if (total[0] == 0) {
+                minutesByDay.remove(day);
+            }
+        }
+
+        boolean bookableOn(LocalDate date) {
+            return doctor != null && doctor.isActive() && doctor.isAvailable() && workingDays.contains(date.getDayOfWeek());
+        }
+    }
+
+    // What one scheduled appointment added to its doctor's load.
+    private static final class Booking {
+        final int doctorId;
+        final int day;
+        final int minutes;
+
+        Booking(int doctorId, int day, int minutes) {
+            this.doctorId = doctorId;
+            this.day = day;
+            this.minutes = minutes;
+        }
+    }
+
+    /** Binary min-heap of one specialization's doctors for one day, with each doctor's position indexed. */
+    private static final class DayHeap {
+        final int day;
+        final List<Load> heap = new ArrayList<>();
+        final Map<Integer, Integer> positions = new HashMap<>();
+
+        DayHeap(int day, List<Load> doctors) {
+            this.day = day;
+            heap.addAll(doctors);
+            for (int i = 0; i < heap.size(); i++) {
+                positions.put(heap.get(i).doctorId, i);
+            }
+            for (int i = heap.size() / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        void update(Load load) {
+            Integer position = positions.get(load.doctorId);
+            if (position != null && siftUp(position) == position) {
+                siftDown(position);
+            }
+        }
+
+        // The n smallest without disturbing the heap: expand from the root, smallest first.
+        List<Doctor> top(int n) {
+            List<Doctor> result = new ArrayList<>(Math.min(n, heap.size()));
+            PriorityQueue<Integer> frontier = new PriorityQueue<>((a, b) -> compare(heap.get(a), heap.get(b)));
+            if (!heap.isEmpty()) {
+                frontier.add(0);
+            }
+            while (result.size() < n && !frontier.isEmpty()) {
+                int i = frontier.poll();
+                result.add(heap.get(i).doctor);
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < heap.size(); child++) {
+                    frontier.add(child);
+                }
+            }
+            return result;
+        }
+
+        private int compare(Load a, Load b) {
+            int byMinutes = Integer.compare(a.minutesOn(day), b.minutesOn(day));
+            if (byMinutes != 0) {
+                return byMinutes;
+            }
+            int byScheduled = Integer.compare(a.scheduled, b.scheduled);
+            if (byScheduled != 0) {
+                return byScheduled;
+            }
+            int byRating = Double.compare(b.rating, a.rating);
+            return byRating != 0 ? byRating : Integer.compare(a.doctorId, b.doctorId);
+        }
+
+        private int siftUp(int i) {
+            Load load = heap.get(i);
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (compare(load, heap.get(parent)) >= 0) {
+                    break;
+                }
+                move(heap.get(parent), i);
+                i = parent;
+            }
+            move(load, i);
+            return i;
+        }
+
+        private void siftDown(int i) {
+            Load load = heap.get(i);
+            int half = heap.size() / 2;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < heap.size() && compare(heap.get(child + 1), heap.get(child)) < 0) {
+                    child++;
+                }
+                if (compare(load, heap.get(child)) <= 0) {
+                    break;
+                }
+                move(heap.get(child), i);
+                i = child;
+            }
+            move(load, i);
+        }
+
+        private void move(Load load, int i) {
+            heap.set(i, load);
+            positions.put(load.doctorId, i);
+        }
+    }
+
+    private final Map<Integer, Load> loads = new HashMap<>();
+    private final IntObjectMap<Booking> bookings = new IntObjectMap<>();
+    // Completed appointments whose patient rating has been folded in, so a later edit does not count it again.
+    private final Set<Integer> ratedAppointments = new HashSet<>();
+    private final Map<String, Map<Integer, DayHeap>> heapsBySpecialization = new HashMap<>();
+    private volatile boolean doctorsStale;
+
+    public DoctorLoadService(AppointmentService appointmentService) {
+        registerDoctors(DatabaseService.getInstance().getAllDoctors());
+        appointmentService.addAppointmentListener(new AppointmentListener() {
+            @Override
+            public void appointmentStored(Appointment appointment) {
+                stored(appointment);
+            }
+
+            @Override
+            public void appointmentDeleted(int appointmentId) {
+                deleted(appointmentId);
+            }
+
+            @Override
+            public void appointmentsReloaded() {
+                reloaded();
+            }
+        });
+    }
+
+    public synchronized void registerDoctors(Iterable<Doctor> doctors) {
+        for (Doctor doctor : doctors) {
+            registerDoctor(doctor);
+        }
+    }
+
+    /**
+     * Adds a doctor or takes in changes to one, such as a new specialization or working
+     * days. The affected day heaps are rebuilt on their next request.
+     */
+    public synchronized void registerDoctor(Doctor doctor) {
+        Load load = loads.computeIfAbsent(doctor.getDoctorId(), Load::new);
+        if (load.specialization != null) {
+            heapsBySpecialization.remove(load.specialization);
+        }
+        if (load.doctor == null) {
+            load.rating = doctor.getRating();
+        }
+        load.doctor = doctor;
+        load.specialization = doctor.getSpecialization() != null ? normalize(doctor.getSpecialization()) : null;
+        load.workingDays = EnumSet.noneOf(DayOfWeek.class);
+        if (doctor.getWorkingDays() != null) {
+            for (String day : doctor.getWorkingDays()) {
+                DayOfWeek dayOfWeek = SchedulingEngine.parseDayOfWeek(day);
+                if (dayOfWeek != null) {
+                    load.workingDays.add(dayOfWeek);
+                }
+            }
+        }
+        if (load.specialization != null) {
+            heapsBySpecialization.remove(load.specialization);
+        }
+    }
+
+    /**
+     * Up to {@code n} bookable doctors of the specialization working on {@code date}, least
+     * loaded first: fewest minutes booked that day, then fewest scheduled appointments,
+     * then best rating.
+     */
+    public List<Doctor> recommendDoctors(String specialization, LocalDate date, int n) {
+        if (doctorsStale) {
+            refreshDoctors();
+        }
+        return leastLoaded(specialization, date, n);
+    }
+
+    private synchronized List<Doctor> leastLoaded(String specialization, LocalDate date, int n) {
+        if (specialization == null || n <= 0) {
+            return new ArrayList<>();
+        }
+        String key = normalize(specialization);
+        int day = (int) date.toEpochDay();
+        Map<Integer, DayHeap> heaps = heapsFor(key);
+        DayHeap heap = heaps.get(day);
+        if (heap == null) {
+            List<Load> doctors = new ArrayList<>();
+            for (Load load : loads.values()) {
+                if (key.equals(load.specialization) && load.bookableOn(date)) {
+                    doctors.add(load);
+                }
+            }
+            heap = new DayHeap(day, doctors);
+            heaps.put(day, heap);
+        }
+        return heap.top(n);
+    }
+
+    public synchronized int getBookedMinutes(int doctorId, LocalDate date) {
+        Load load = loads.get(doctorId);
+        return load != null ? load.minutesOn((int) date.toEpochDay()) : 0;
+    }
+
+    public synchronized int getScheduledCount(int doctorId) {
+        Load load = loads.get(doctorId);
+        return load != null ? load.scheduled : 0;
+    }
+
+    public synchronized double getRating(int doctorId) {
+        Load load = loads.get(doctorId);
+        return load != null ? load.rating : 0.0;
+    }
+
+    /**
+     * Folds a patient's rating (0 to 5) into the doctor's rolling rating, an exponentially
+     * weighted average that starts from the doctor's stored rating.
+     */
+    public synchronized void recordRating(int doctorId, double rating) {
+        if (rating < 0 || rating > 5) {
+            throw new IllegalArgumentException("Rating must be between 0 and 5: " + rating);
+        }
+        Load load = loads.computeIfAbsent(doctorId, Load::new);
+        load.rating = load.rating == 0.0 ? rating : load.rating + RATING_WEIGHT * (rating - load.rating);
+        reposition(load);
+    }
+
+    private synchronized void stored(Appointment appointment) {
+        double patientRating = appointment.getPatientRating();
+        if ("Completed".equalsIgnoreCase(appointment.getStatus()) && patientRating > 0 && patientRating <= 5
+                && ratedAppointments.add(appointment.getAppointmentId())) {
+            recordRating(appointment.getDoctorId(), patientRating);
+        }
+        unbook(appointment.getAppointmentId());
+        if (!appointment.isScheduled() || appointment.getAppointmentDate() == null) {
+            return;
+        }
+        Booking booking = new Booking(appointment.getDoctorId(),
+                                      (int) appointment.getAppointmentDate().toLocalDate().toEpochDay(),
+                                      appointment.getDurationMinutes());
+        bookings.put(appointment.getAppointmentId(), booking);
+        Load load = loads.computeIfAbsent(booking.doctorId, Load::new);
+        load.addMinutes(booking.day, booking.minutes);
+        load.scheduled++;
+        reposition(load);
+    }
+
+    private synchronized void deleted(int appointmentId) {
+        unbook(appointmentId);
+    }
+
+    // Doctors may have been added, changed or removed in the database as well, but the
+    // listener runs with every booking stopped, so they are re-read on the next recommendation.
+    private synchronized void reloaded() {
+        bookings.clear();
+        for (Load load : loads.values()) {
+            load.minutesByDay.clear();
+            load.scheduled = 0;
+        }
+        heapsBySpecialization.clear();
+        doctorsStale = true;
+    }
+
+    private void refreshDoctors() {
+        doctorsStale = false;
+        List<Doctor> doctors = new ArrayList<>();
+        try {
+            DatabaseService.getInstance().streamDoctors(doctors::add);
+        } catch (SQLException e) {
+            System.err.println("Could not reload doctors, keeping the known ones: " + e.getMessage());
+            doctorsStale = true;
+            return;
+        }
+        synchronized (this) {
+            Set<Integer> current = new HashSet<>();
+            for (Doctor doctor : doctors) {
+                current.add(doctor.getDoctorId());
+            }
+            for (Load load : loads.values()) {
+                if (!current.contains(load.doctorId)) {
+                    load.doctor = null;
+                }
+            }
+            heapsBySpecialization.clear();
+            registerDoctors(doctors);
+        }
+    }
+
+    private void unbook(int appointmentId) {
+        Booking booking = bookings.remove(appointmentId);
+        if (booking != null) {
+            Load load = loads.get(booking.doctorId);
+            load.addMinutes(booking.day, -booking.minutes);
+            load.scheduled--;
+            reposition(load);
+        }
+    }
+
+    // The scheduled count and rating are part of every day's order, not just the booking's day.
+    private void reposition(Load load) {
+        if (load.specialization != null) {
+            Map<Integer, DayHeap> heaps = heapsBySpecialization.get(load.specialization);
+            if (heaps != null) {
+                heaps.values().forEach(heap -> heap.update(load));
+            }
+        }
+    }
+
+    private Map<Integer, DayHeap> heapsFor(String specialization) {
+        return heapsBySpecialization.computeIfAbsent(specialization, key -> new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DayHeap> eldest) {
+                return size() > MAX_DAY_HEAPS;
+            }
+        });
+    }
+
+    private static String normalize(String specialization) {
+        return specialization.trim().toLowerCase(Locale.ROOT);
+    }
+}
\ No newline at end of file
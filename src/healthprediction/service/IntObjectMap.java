@@ -0,0 +1,160 @@
+package com.healthprediction.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Open-addressing hash map from primitive int keys to non-null values. Avoids boxing
+ * the key and the per-entry node objects of a {@code HashMap<Integer, V>}.
+ * Not thread-safe.
+ */
+class IntObjectMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    IntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        for (int slot = slot(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("IntObjectMap does not store null values");
+        }
+        int slot = slot(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > values.length) {
+            resize(values.length << 1);
+        }
+        return null;
+    }
+
+    V computeIfAbsent(int key, IntFunction<V> factory) {
+        V value = get(key);
+        if (value == null) {
+            value = factory.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int slot = slot(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        forEachValue(result::add);
+        return result;
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones.
+    private void shiftBack(int freed) {
+        int slot = freed;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == null) {
+                break;
+            }
+            int home = slot(keys[slot]);
+            boolean movable = freed <= slot ? (home <= freed || home > slot) : (home <= freed && home > slot);
+            if (movable) {
+                keys[freed] = keys[slot];
+                values[freed] = values[slot];
+                freed = slot;
+            }
+        }
+        values[freed] = null;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
\ No newline at end of file
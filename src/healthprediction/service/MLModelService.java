@@ -4,99 +4,540 @@ import com.healthprediction.model.HealthRecord;
 import com.healthprediction.model.Patient;
 import com.healthprediction.ml.HealthRiskPredictor;
 import com.healthprediction.ml.DiseasePredictor;
+import com.healthprediction.ml.Feature;
+import com.healthprediction.ml.LogisticRegression;
+import com.healthprediction.ml.PredictionRules;
 import com.healthprediction.ml.RecommendationEngine;
+import com.healthprediction.ml.TrainingSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.sql.SQLException; 
 
+/**
+ * Runs the ML models. {@link #loadModels()} loads them concurrently in the background and
+ * returns at once; each model has a readiness future, and a prediction waits (up to
+ * {@code healthprediction.ml.modelWaitMillis}, default 10 seconds) only for the models
+ * it is about to use.
+ *
+ * <p>Single-patient predictions are cached, the most recently used
+ * {@code healthprediction.ml.predictionCacheSize} (default 1000) patients. An entry holds
+ * until the patient or their health records change through {@link DatabaseService} or the
+ * models are retrained ({@link #invalidatePredictions()}), so a hit costs no queries.
+ * Concurrent requests for a patient not in the cache share one computation.
+ */
 public class MLModelService {
+    private static final long MODEL_WAIT_MILLIS = Long.getLong("healthprediction.ml.modelWaitMillis", 10_000);
+    private static final int PREDICTION_PARALLELISM = Integer.getInteger("healthprediction.ml.parallelism",
+                                                                         Runtime.getRuntime().availableProcessors());
+    private static final int PREDICTION_PAGE_SIZE = 500;
+    private static final int PREDICTION_TASK_SIZE = 16;
+    private static final int PREDICTION_CACHE_SIZE = Integer.getInteger("healthprediction.ml.predictionCacheSize", 1000);
+
+    // One patient's prediction with the model version it was made with; the result is
+    // completed by the first caller that missed and joined by the others.
+    private static final class CachedPrediction {
+        final int modelVersion;
+        final CompletableFuture<PredictionResult> result = new CompletableFuture<>();
+
+        CachedPrediction(int modelVersion) {
+            this.modelVersion = modelVersion;
+        }
+    }
+
     private static MLModelService instance;
-    private HealthRiskPredictor riskPredictor;
-    private DiseasePredictor diseasePredictor;
-    private RecommendationEngine recommendationEngine;
+    private final CompletableFuture<HealthRiskPredictor> riskPredictor = new CompletableFuture<>();
+    private final CompletableFuture<DiseasePredictor> diseasePredictor = new CompletableFuture<>();
+    private final CompletableFuture<RecommendationEngine> recommendationEngine = new CompletableFuture<>();
     private DatabaseService dbService; 
-    private boolean modelsLoaded = false;
+    private volatile boolean loadingStarted = false;
+    private ForkJoinPool predictionPool;
+    private final AtomicInteger modelVersion = new AtomicInteger();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheEvictions = new LongAdder();
+    private final Map<Integer, CachedPrediction> predictionCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CachedPrediction> eldest) {
+            if (size() > PREDICTION_CACHE_SIZE) {
+                cacheEvictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
     
     private MLModelService() {
         this.dbService = DatabaseService.getInstance(); 
+        dbService.addPatientChangeListener(this::invalidatePatient);
+        PredictionRules.addReloadListener(this::invalidatePredictions);
     }
     
-    public static MLModelService getInstance() {
+    public static synchronized MLModelService getInstance() {
         if (instance == null) {
             instance = new MLModelService();
         }
         return instance;
     }
     
-    public void loadModels() {
-        try {
-            riskPredictor = new HealthRiskPredictor();
-            diseasePredictor = new DiseasePredictor();
-            recommendationEngine = new RecommendationEngine();
-            
-            riskPredictor.loadModel();
-            diseasePredictor.loadModel();
-            recommendationEngine.loadModel();
-            
-            modelsLoaded = true;
-            System.out.println("ML models loaded successfully");
-        } catch (Exception e) {
-            System.err.println("Error loading ML models: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Starts loading every model, each on its own thread, and returns without waiting.
+     * Calling it again has no effect.
+     *
+     * @return completes when all models are loaded, or exceptionally if one fails
+     */
+    public synchronized CompletableFuture<Void> loadModels() {
+        if (!loadingStarted) {
+            loadingStarted = true;
+            ExecutorService loaders = Executors.newFixedThreadPool(3, runnable -> {
+                Thread thread = new Thread(runnable, "ml-model-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            load(riskPredictor, loaders, () -> {
+                HealthRiskPredictor predictor = new HealthRiskPredictor();
+                predictor.loadModel();
+                return predictor;
+            });
+            load(diseasePredictor, loaders, () -> {
+                DiseasePredictor predictor = new DiseasePredictor();
+                predictor.loadModel();
+                return predictor;
+            });
+            load(recommendationEngine, loaders, () -> {
+                RecommendationEngine engine = new RecommendationEngine();
+                engine.loadModel();
+                return engine;
+            });
+            loaders.shutdown();
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(riskPredictor, diseasePredictor, recommendationEngine);
+        return all.whenComplete((ignored, e) -> {
+            if (e == null) {
+                System.out.println("ML models loaded successfully");
+            }
+        });
+    }
+
+    private static <T> void load(CompletableFuture<T> model, ExecutorService loaders, Callable<T> loader) {
+        loaders.execute(() -> {
+            try {
+                model.complete(loader.call());
+            } catch (Exception e) {
+                System.err.println("Error loading ML model: " + e.getMessage());
+                e.printStackTrace();
+                model.completeExceptionally(e);
+            }
+        });
+    }
+
+    /** Completes once the health risk model is loaded. */
+    public CompletableFuture<HealthRiskPredictor> getRiskPredictorReady() {
+        return riskPredictor.copy();
+    }
+
+    /** Completes once the disease model is loaded. */
+    public CompletableFuture<DiseasePredictor> getDiseasePredictorReady() {
+        return diseasePredictor.copy();
+    }
+
+    /** Completes once the recommendation model is loaded. */
+    public CompletableFuture<RecommendationEngine> getRecommendationEngineReady() {
+        return recommendationEngine.copy();
+    }
+
+    public boolean isReady() {
+        return riskPredictor.isDone() && !riskPredictor.isCompletedExceptionally()
+                && diseasePredictor.isDone() && !diseasePredictor.isCompletedExceptionally()
+                && recommendationEngine.isDone() && !recommendationEngine.isCompletedExceptionally();
+    }
+
+    /** Drops the patient's cached prediction. */
+    public void invalidatePatient(int patientId) {
+        synchronized (predictionCache) {
+            predictionCache.remove(patientId);
+        }
+    }
+
+    /** Drops every cached prediction, e.g. after the models are retrained. */
+    public void invalidatePredictions() {
+        synchronized (predictionCache) {
+            modelVersion.incrementAndGet();
+            predictionCache.clear();
         }
     }
 
-    public Map<String, Object> getPredictionAndRecommendations(int patientId) {
-        Map<String, Object> results = new HashMap<>();
-        if (!modelsLoaded) {
-            results.put("error", "ML models not loaded. Please restart application.");
-            return results;
+    /**
+     * Fits the risk model to every stored health record, labelled by whether a diagnosis
+     * was recorded, on the prediction pool, and drops the predictions made before it.
+     * The model supplies {@link PredictionResult#getDiagnosisProbability()}; risk scores,
+     * tiers and recommendations stay with the prediction rules.
+     *
+     * @throws IllegalArgumentException if the records do not include both labels
+     */
+    public LogisticRegression retrainRiskModel() throws SQLException {
+        HealthRiskPredictor risk = await(riskPredictor, "HealthRiskPredictor", deadline());
+        TrainingSet.Builder builder = new TrainingSet.Builder();
+        dbService.streamHealthRecordsWithPatients(builder::add);
+        LogisticRegression model = risk.retrainModel(builder.build(), predictionPool());
+        invalidatePredictions();
+        return model;
+    }
+
+    public int getModelVersion() {
+        return modelVersion.get();
+    }
+
+    /** Prediction cache hits, misses, evictions and current size. */
+    public Map<String, Long> getPredictionCacheStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", cacheHits.sum());
+        stats.put("misses", cacheMisses.sum());
+        stats.put("evictions", cacheEvictions.sum());
+        synchronized (predictionCache) {
+            stats.put("size", (long) predictionCache.size());
+        }
+        return stats;
+    }
+
+    public PredictionResult getPredictionAndRecommendations(int patientId) {
+        CachedPrediction cached;
+        boolean missed = false;
+        synchronized (predictionCache) {
+            cached = predictionCache.get(patientId);
+            if (cached == null || cached.modelVersion != modelVersion.get()) {
+                cached = new CachedPrediction(modelVersion.get());
+                predictionCache.put(patientId, cached);
+                missed = true;
+            }
+        }
+        if (missed) {
+            cacheMisses.increment();
+            PredictionResult result;
+            try {
+                result = computePrediction(patientId);
+            } catch (Throwable t) {
+                // Callers waiting on this entry must not block forever.
+                System.err.println("Unexpected error during prediction for patient " + patientId + ": " + t);
+                result = PredictionResult.failed(patientId, "An unexpected error occurred: " + t);
+            }
+            cached.result.complete(result);
+            // Errors and partial results (unknown patient, model still loading) are not kept.
+            if (!result.isSuccess()) {
+                synchronized (predictionCache) {
+                    predictionCache.remove(patientId, cached);
+                }
+            }
+        } else {
+            cacheHits.increment();
         }
+        return cached.result.join();
+    }
 
+    private PredictionResult computePrediction(int patientId) {
         try {
             Patient patient = dbService.getPatientById(patientId);
-            if (patient == null) {
-                results.put("error", "Patient not found with ID: " + patientId);
-                return results;
+            HealthRecord latestRecord = patient != null ? dbService.getLatestHealthRecordForPatient(patientId) : null;
+            return predict(patientId, patient, latestRecord, deadline());
+        } catch (SQLException e) {
+            System.err.println("Database error during prediction: " + e.getMessage());
+            e.printStackTrace();
+            return PredictionResult.failed(patientId, "Database error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Scores a whole panel of patients. Patients and their latest records are loaded with
+     * two set-based queries instead of two queries per patient. Each patient gets the same
+     * result as {@link #getPredictionAndRecommendations(int)}.
+     */
+    public Map<Integer, PredictionResult> getPredictionsAndRecommendations(Collection<Integer> patientIds) {
+        Map<Integer, PredictionResult> resultsByPatient = new LinkedHashMap<>();
+        Map<Integer, Patient> patients;
+        Map<Integer, HealthRecord> latestRecords;
+        try {
+            patients = dbService.getPatientsByIds(patientIds);
+            latestRecords = dbService.getLatestHealthRecordsForPatients(patients.keySet());
+        } catch (SQLException e) {
+            System.err.println("Database error during batch prediction: " + e.getMessage());
+            e.printStackTrace();
+            for (Integer patientId : patientIds) {
+                resultsByPatient.put(patientId, PredictionResult.failed(patientId, "Database error: " + e.getMessage()));
+            }
+            return resultsByPatient;
+        }
+
+        long deadline = deadline();
+        for (Integer patientId : patientIds) {
+            resultsByPatient.put(patientId, predict(patientId, patients.get(patientId), latestRecords.get(patientId), deadline));
+        }
+        return resultsByPatient;
+    }
+
+    /**
+     * Scores the given patients in parallel on a ForkJoin pool of
+     * {@code healthprediction.ml.parallelism} threads (default: one per core). Patients and
+     * their latest records are loaded in bulk a page at a time, the next page while the
+     * current one is scored. Each result, the same as
+     * {@link #getPredictionAndRecommendations(int)} returns, is handed to {@code consumer}
+     * as soon as it is ready; the consumer is called from the pool's threads concurrently.
+     */
+    public BatchPredictionReport predictBatch(Collection<Integer> patientIds, Consumer<PredictionResult> consumer) {
+        List<Integer> ids = new ArrayList<>(patientIds);
+        int[] offset = {0};
+        return runBatch(consumer, () -> {
+            if (offset[0] >= ids.size()) {
+                return null;
+            }
+            List<Integer> pageIds = ids.subList(offset[0], Math.min(ids.size(), offset[0] + PREDICTION_PAGE_SIZE));
+            offset[0] += pageIds.size();
+            PredictionPage page = new PredictionPage(pageIds);
+            try {
+                page.patients = dbService.getPatientsByIds(pageIds);
+                page.latestRecords = dbService.getLatestHealthRecordsForPatients(page.patients.keySet());
+            } catch (SQLException e) {
+                page.error = e;
             }
+            return page;
+        });
+    }
 
-            HealthRecord latestRecord = dbService.getLatestHealthRecordForPatient(patientId);
-            if (latestRecord == null) {
-                results.put("error", "No health records found for patient ID: " + patientId);
-                return results;
+    /**
+     * Like {@link #predictBatch}, for every patient, paging through them by id. If a page
+     * cannot be fetched the run stops there, and the report is not
+     * {@link BatchPredictionReport#isComplete() complete}.
+     */
+    public BatchPredictionReport predictAll(Consumer<PredictionResult> consumer) {
+        int[] lastId = {0};
+        boolean[] done = {false};
+        return runBatch(consumer, () -> {
+            if (done[0]) {
+                return null;
+            }
+            try {
+                List<Patient> patients = dbService.getPatientsPage(lastId[0], PREDICTION_PAGE_SIZE);
+                if (patients.isEmpty()) {
+                    return null;
+                }
+                List<Integer> pageIds = new ArrayList<>(patients.size());
+                PredictionPage page = new PredictionPage(pageIds);
+                page.patients = new HashMap<>();
+                for (Patient patient : patients) {
+                    pageIds.add(patient.getPatientId());
+                    page.patients.put(patient.getPatientId(), patient);
+                }
+                lastId[0] = pageIds.get(pageIds.size() - 1);
+                done[0] = patients.size() < PREDICTION_PAGE_SIZE;
+                page.latestRecords = dbService.getLatestHealthRecordsForPatients(pageIds);
+                return page;
+            } catch (SQLException e) {
+                // Without the page the next id is unknown; stop here.
+                System.err.println("Database error during batch prediction after patient " + lastId[0] + ": " + e.getMessage());
+                done[0] = true;
+                return PredictionPage.aborted(e);
             }
+        });
+    }
 
-            
-            String healthRisk = riskPredictor.predictRisk(patient, latestRecord);
-            double healthScore = riskPredictor.getHealthScore(latestRecord);
-            
-            
-            List<String> predictedDiseases = diseasePredictor.predictDiseases(patient, latestRecord);
+    private static final class PredictionPage {
+        final List<Integer> patientIds;
+        Map<Integer, Patient> patients = Map.of();
+        Map<Integer, HealthRecord> latestRecords = Map.of();
+        SQLException error;
+        // Set on the page that ends a run early, which holds no patients.
+        SQLException abort;
 
-            
-            List<String> recommendations = recommendationEngine.generateRecommendations(
-                patient, latestRecord, healthScore / 100.0, predictedDiseases 
-            );
+        PredictionPage(List<Integer> patientIds) {
+            this.patientIds = patientIds;
+        }
 
-            results.put("healthRisk", healthRisk);
-            results.put("healthScore", String.format("%.2f", healthScore));
-            results.put("predictedDiseases", predictedDiseases);
-            results.put("recommendations", recommendations);
+        static PredictionPage aborted(SQLException cause) {
+            PredictionPage page = new PredictionPage(List.of());
+            page.abort = cause;
+            return page;
+        }
+    }
 
-        } catch (SQLException e) {
-            System.err.println("Database error during prediction: " + e.getMessage());
-            e.printStackTrace();
-            results.put("error", "Database error: " + e.getMessage());
+    // Scores one page by splitting it in halves down to a few patients per task.
+    private final class ScorePage extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final PredictionPage page;
+        private final int from;
+        private final int to;
+        private final long deadline;
+        private final Consumer<PredictionResult> consumer;
+        private final LongAdder failed;
+
+        ScorePage(PredictionPage page, int from, int to, long deadline,
+                  Consumer<PredictionResult> consumer, LongAdder failed) {
+            this.page = page;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+            this.consumer = consumer;
+            this.failed = failed;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PREDICTION_TASK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ScorePage(page, from, middle, deadline, consumer, failed),
+                          new ScorePage(page, middle, to, deadline, consumer, failed));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Integer patientId = page.patientIds.get(i);
+                PredictionResult result = page.error != null
+                        ? PredictionResult.failed(patientId, "Database error: " + page.error.getMessage())
+                        : predict(patientId, page.patients.get(patientId), page.latestRecords.get(patientId), deadline);
+                if (!result.isSuccess()) {
+                    failed.increment();
+                }
+                try {
+                    consumer.accept(result);
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling prediction for patient " + patientId + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private BatchPredictionReport runBatch(Consumer<PredictionResult> consumer, Supplier<PredictionPage> pages) {
+        long start = System.nanoTime();
+        long deadline = deadline();
+        LongAdder failed = new LongAdder();
+        ForkJoinPool pool = predictionPool();
+        int scored = 0;
+        ForkJoinTask<Void> previous = null;
+        SQLException abort = null;
+        PredictionPage page;
+        while ((page = pages.get()) != null) {
+            if (page.abort != null) {
+                abort = page.abort;
+                break;
+            }
+            ForkJoinTask<Void> current = pool.submit(new ScorePage(page, 0, page.patientIds.size(), deadline, consumer, failed));
+            scored += page.patientIds.size();
+            // At most two pages in memory: the one being scored and the one being fetched.
+            if (previous != null) {
+                previous.join();
+            }
+            previous = current;
+        }
+        if (previous != null) {
+            previous.join();
+        }
+        BatchPredictionReport report = new BatchPredictionReport(scored, failed.intValue(), pool.getParallelism(),
+                                                                 System.nanoTime() - start, abort);
+        if (abort != null) {
+            System.err.println("Batch prediction aborted: " + report);
+        } else {
+            System.out.println("Batch prediction finished: " + report);
+        }
+        return report;
+    }
+
+    private synchronized ForkJoinPool predictionPool() {
+        if (predictionPool == null) {
+            predictionPool = new ForkJoinPool(PREDICTION_PARALLELISM, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("ml-prediction-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return predictionPool;
+    }
+
+    private PredictionResult predict(Integer patientId, Patient patient, HealthRecord latestRecord, long deadline) {
+        if (patient == null) {
+            return PredictionResult.failed(patientId, "Patient not found with ID: " + patientId);
+        }
+        if (latestRecord == null) {
+            return PredictionResult.failed(patientId, "No health records found for patient ID: " + patientId);
+        }
+        try {
+            return score(patient, latestRecord, deadline);
         } catch (IllegalStateException e) {
-            System.err.println("ML Model error: " + e.getMessage());
-            e.printStackTrace();
-            results.put("error", "ML Model not ready: " + e.getMessage());
+            return PredictionResult.failed(patientId, "ML Model not ready: " + e.getMessage());
         } catch (Exception e) {
-            System.err.println("Unexpected error during prediction: " + e.getMessage());
-            e.printStackTrace();
-            results.put("error", "An unexpected error occurred: " + e.getMessage());
+            System.err.println("Unexpected error during prediction for patient " + patientId + ": " + e.getMessage());
+            return PredictionResult.failed(patientId, "An unexpected error occurred: " + e.getMessage());
+        }
+    }
+
+    // Each step waits only for its own model, and a model that is not ready keeps the
+    // results of the steps before it. Nothing here builds text, so scoring a patient
+    // allocates little beyond its feature vector and the result. The rules are read once
+    // so a reload during the prediction cannot score one patient with two rule sets.
+    private PredictionResult score(Patient patient, HealthRecord latestRecord, long deadline) {
+        int patientId = patient.getPatientId();
+        int recordId = latestRecord.getRecordId();
+        double[] features = Feature.extract(patient, latestRecord);
+        PredictionRules rules = PredictionRules.current();
+        HealthRiskPredictor risk = await(riskPredictor, "HealthRiskPredictor", deadline);
+        double riskScore = risk.riskScore(rules, features);
+        double healthScore = risk.getHealthScore(rules, features);
+        double diagnosisProbability = risk.diagnosisProbability(features);
+        int diseaseCodes;
+        try {
+            diseaseCodes = await(diseasePredictor, "DiseasePredictor", deadline).predictDiseaseCodes(rules, features);
+        } catch (IllegalStateException e) {
+            return PredictionResult.scoresOnly(patientId, recordId, riskScore, healthScore, diagnosisProbability,
+                                               "ML Model not ready: " + e.getMessage());
+        }
+        long recommendations;
+        try {
+            recommendations = await(recommendationEngine, "RecommendationEngine", deadline)
+                    .recommend(patient, latestRecord, riskScore, diseaseCodes);
+        } catch (IllegalStateException e) {
+            return PredictionResult.withoutRecommendations(patientId, recordId, riskScore, healthScore, diagnosisProbability,
+                                                           diseaseCodes, "ML Model not ready: " + e.getMessage());
+        }
+        return PredictionResult.of(patientId, recordId, riskScore, healthScore, diagnosisProbability, diseaseCodes,
+                                   recommendations);
+    }
+
+    private static long deadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MODEL_WAIT_MILLIS);
+    }
+
+    /**
+     * @throws IllegalStateException if the model is still loading at the deadline or failed to load
+     */
+    private <T> T await(CompletableFuture<T> model, String name, long deadline) {
+        if (!loadingStarted && !model.isDone()) {
+            throw new IllegalStateException(name + " model not loaded. Call loadModels() first.");
+        }
+        try {
+            return model.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(name + " model is still loading after " + MODEL_WAIT_MILLIS + " ms");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(name + " model failed to load: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the " + name + " model");
         }
-        return results;
     }
 }
\ No newline at end of file
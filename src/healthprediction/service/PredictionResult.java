@@ -0,0 +1,135 @@
+package com.healthprediction.service;
+
+import com.healthprediction.ml.DiseaseCode;
+import com.healthprediction.ml.Recommendation;
+import com.healthprediction.ml.RiskTier;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What the models predict for one patient from their latest health record, or why they
+ * could not. When a later model is not ready, the result keeps what the earlier ones
+ * produced alongside the error: the risk and health scores, then the diseases. Scores
+ * are kept as numbers and diseases and recommendations as bit masks of
+ * {@link DiseaseCode} and {@link Recommendation}; turning them into text is left to
+ * whoever shows them. Immutable, so one instance can be shared by every reader.
+ */
+public final class PredictionResult {
+    private final int patientId;
+    private final int recordId;
+    private final double riskScore;
+    private final RiskTier riskTier;
+    private final double healthScore;
+    private final double diagnosisProbability;
+    private final int diseaseCodes;
+    private final long recommendations;
+    private final boolean diseasesPredicted;
+    private final boolean recommended;
+    private final String error;
+
+    private PredictionResult(int patientId, int recordId, double riskScore, RiskTier riskTier, double healthScore,
+                             double diagnosisProbability, int diseaseCodes, boolean diseasesPredicted,
+                             long recommendations, boolean recommended, String error) {
+        this.patientId = patientId;
+        this.recordId = recordId;
+        this.riskScore = riskScore;
+        this.riskTier = riskTier;
+        this.healthScore = healthScore;
+        this.diagnosisProbability = diagnosisProbability;
+        this.diseaseCodes = diseaseCodes;
+        this.diseasesPredicted = diseasesPredicted;
+        this.recommendations = recommendations;
+        this.recommended = recommended;
+        this.error = error;
+    }
+
+    static PredictionResult of(int patientId, int recordId, double riskScore, double healthScore,
+                               double diagnosisProbability, int diseaseCodes, long recommendations) {
+        return new PredictionResult(patientId, recordId, riskScore, RiskTier.of(riskScore), healthScore,
+                                    diagnosisProbability, diseaseCodes, true, recommendations, true, null);
+    }
+
+    /** Scores only, from a patient whose disease model was not ready. */
+    static PredictionResult scoresOnly(int patientId, int recordId, double riskScore, double healthScore,
+                                       double diagnosisProbability, String error) {
+        return new PredictionResult(patientId, recordId, riskScore, RiskTier.of(riskScore), healthScore,
+                                    diagnosisProbability, 0, false, 0L, false, error);
+    }
+
+    /** Scores and diseases, from a patient whose recommendation engine was not ready. */
+    static PredictionResult withoutRecommendations(int patientId, int recordId, double riskScore, double healthScore,
+                                                   double diagnosisProbability, int diseaseCodes, String error) {
+        return new PredictionResult(patientId, recordId, riskScore, RiskTier.of(riskScore), healthScore,
+                                    diagnosisProbability, diseaseCodes, true, 0L, false, error);
+    }
+
+    static PredictionResult failed(int patientId, String error) {
+        return new PredictionResult(patientId, 0, 0.0, null, 0.0, Double.NaN, 0, false, 0L, false, error);
+    }
+
+    public int getPatientId() { return patientId; }
+
+    /** The health record the prediction was made from, or 0 if nothing was scored. */
+    public int getRecordId() { return recordId; }
+
+    /** True if every model contributed; a partial result has an error as well. */
+    public boolean isSuccess() { return error == null; }
+
+    /** Why there is no prediction or only part of one, or null if it is complete. */
+    public String getError() { return error; }
+
+    /** Whether the risk and health scores are set, as they are in a partial result. */
+    public boolean isRiskScored() { return riskTier != null; }
+
+    public boolean isDiseasePredicted() { return diseasesPredicted; }
+
+    public boolean isRecommended() { return recommended; }
+
+    /** Between 0 and 1, higher is worse, from the prediction rules; {@link RiskTier}s are cut on this scale. */
+    public double getRiskScore() { return riskScore; }
+
+    /** Null if the risk was not scored. */
+    public RiskTier getRiskTier() { return riskTier; }
+
+    /** Between 0 and 100, higher is better. */
+    public double getHealthScore() { return healthScore; }
+
+    /**
+     * Probability from the trained model that a diagnosis is recorded for the patient, or
+     * NaN if no model has been trained. Not on the risk score's scale.
+     */
+    public double getDiagnosisProbability() { return diagnosisProbability; }
+
+    public boolean hasDiagnosisProbability() { return !Double.isNaN(diagnosisProbability); }
+
+    public boolean hasDisease(DiseaseCode code) {
+        return code.in(diseaseCodes);
+    }
+
+    public Set<DiseaseCode> getDiseaseCodes() {
+        return DiseaseCode.fromMask(diseaseCodes);
+    }
+
+    public boolean hasRecommendation(Recommendation recommendation) {
+        return recommendation.in(recommendations);
+    }
+
+    /** In presentation order. */
+    public List<Recommendation> getRecommendations() {
+        return Recommendation.fromMask(recommendations);
+    }
+
+    @Override
+    public String toString() {
+        if (riskTier == null) {
+            return "PredictionResult{patientId=" + patientId + ", error='" + error + "'}";
+        }
+        return "PredictionResult{patientId=" + patientId + ", recordId=" + recordId + ", risk=" + riskTier
+                + " (" + riskScore + "), healthScore=" + healthScore
+                + (hasDiagnosisProbability() ? ", diagnosisProbability=" + diagnosisProbability : "")
+                + (diseasesPredicted ? ", diseases=" + getDiseaseCodes() : "")
+                + (recommended ? ", recommendations=" + Long.bitCount(recommendations) : "")
+                + (error != null ? ", error='" + error + "'" : "") + '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,231 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reminders for scheduled appointments, kept in a hierarchical timing wheel: four levels
+ * of 64 slots, each slot of a level spanning a whole turn of the level below. With the
+ * default one-minute tick that covers about 32 years. Adding and cancelling a timer is
+ * O(1) whatever the number pending; a timer moves down a level at most three times before
+ * it fires. Each appointment has one timer per {@link AppointmentReminder.Kind}, and
+ * scheduling it again replaces them.
+ *
+ * <p>Reminders whose time has already passed when an appointment is scheduled are
+ * dropped, so a restart does not repeat them.
+ */
+public class ReminderScheduler {
+    private static final long TICK_SECONDS = Long.getLong("healthprediction.reminders.tickSeconds", 60);
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS);
+    private static final AppointmentReminder.Kind[] KINDS = AppointmentReminder.Kind.values();
+
+    private static final class Timer {
+        final AppointmentReminder reminder;
+        final long deadline;
+        Timer previous;
+        Timer next;
+        Timer[] bucket;
+        int slot;
+
+        Timer(AppointmentReminder reminder, long deadline) {
+            this.reminder = reminder;
+            this.deadline = deadline;
+        }
+    }
+
+    // Each bucket is one level; a slot holds the head of a doubly linked list.
+    private final Timer[][] wheel = new Timer[LEVELS][SLOTS];
+    private final IntObjectMap<Timer[]> timersByAppointment = new IntObjectMap<>();
+    private final ScheduledExecutorService ticker;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private volatile ReminderSink sink;
+    private long currentTick;
+    private int pending;
+
+    public ReminderScheduler(ReminderSink sink) {
+        this.sink = sink;
+        this.currentTick = tickOf(Instant.now().getEpochSecond());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "appointment-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long untilNextTick = (currentTick + 1) * TICK_SECONDS * 1000 - System.currentTimeMillis();
+        ticker.scheduleAtFixedRate(this::tick, Math.max(0, untilNextTick), TICK_SECONDS * 1000, TimeUnit.MILLISECONDS);
+    }
+
+    public void setSink(ReminderSink sink) {
+        this.sink = sink;
+    }
+
+    /** Replaces the appointment's reminders; an appointment that is not scheduled gets none. */
+    public synchronized void schedule(Appointment appointment) {
+        cancel(appointment.getAppointmentId());
+        if (!appointment.isScheduled() || appointment.getAppointmentDate() == null) {
+            return;
+        }
+        Timer[] timers = null;
+        for (AppointmentReminder.Kind kind : KINDS) {
+            LocalDateTime due = appointment.getAppointmentDate().minus(kind.getLead());
+            long deadline = tickOf(due.atZone(zone).toEpochSecond());
+            if (deadline <= currentTick) {
+                continue;
+            }
+            if (timers == null) {
+                timers = new Timer[KINDS.length];
+            }
+            timers[kind.ordinal()] = new Timer(new AppointmentReminder(kind, appointment, due), deadline);
+            insert(timers[kind.ordinal()]);
+        }
+        if (timers != null) {
+            timersByAppointment.put(appointment.getAppointmentId(), timers);
+        }
+    }
+
+    public synchronized void cancel(int appointmentId) {
+        Timer[] timers = timersByAppointment.remove(appointmentId);
+        if (timers != null) {
+            for (Timer timer : timers) {
+                if (timer != null && timer.bucket != null) {
+                    unlink(timer);
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for (Timer[] level : wheel) {
+            Arrays.fill(level, null);
+        }
+        timersByAppointment.clear();
+        pending = 0;
+    }
+
+    /** Number of reminders still to be delivered. */
+    public synchronized int size() {
+        return pending;
+    }
+
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private void tick() {
+        List<AppointmentReminder> due = advanceTo(tickOf(Instant.now().getEpochSecond()));
+        ReminderSink target = sink;
+        for (AppointmentReminder reminder : due) {
+            try {
+                target.deliver(reminder);
+            } catch (RuntimeException e) {
+                System.err.println("Error delivering reminder " + reminder + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // One step per tick even after a long pause (e.g. a suspended laptop), so nothing is skipped.
+    synchronized List<AppointmentReminder> advanceTo(long tick) {
+        List<AppointmentReminder> due = new ArrayList<>();
+        while (currentTick < tick) {
+            currentTick++;
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK, due);
+            }
+            Timer timer = wheel[0][(int) currentTick & SLOT_MASK];
+            while (timer != null) {
+                Timer next = timer.next;
+                unlink(timer);
+                expire(timer, due);
+                timer = next;
+            }
+        }
+        return due;
+    }
+
+    private void cascade(int level, int slot, List<AppointmentReminder> due) {
+        Timer timer = wheel[level][slot];
+        wheel[level][slot] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.bucket = null;
+            pending--;
+            if (timer.deadline <= currentTick) {
+                expire(timer, due);
+            } else {
+                insert(timer);
+            }
+            timer = next;
+        }
+    }
+
+    private void expire(Timer timer, List<AppointmentReminder> due) {
+        due.add(timer.reminder);
+        int id = timer.reminder.getAppointment().getAppointmentId();
+        Timer[] timers = timersByAppointment.get(id);
+        if (timers != null) {
+            timers[timer.reminder.getKind().ordinal()] = null;
+            for (Timer other : timers) {
+                if (other != null) {
+                    return;
+                }
+            }
+            timersByAppointment.remove(id);
+        }
+    }
+
+    // A timer goes on the lowest level whose span covers it, in the slot its deadline
+    // maps to there; it is cascaded down when the level below next wraps onto that slot.
+    private void insert(Timer timer) {
+        long delta = timer.deadline - currentTick;
+        long deadline = delta < MAX_SPAN ? timer.deadline : currentTick + MAX_SPAN - 1;
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1)) && level < LEVELS - 1) {
+            level++;
+        }
+        int slot = (int) (deadline >>> (SLOT_BITS * level)) & SLOT_MASK;
+        Timer[] bucket = wheel[level];
+        timer.bucket = bucket;
+        timer.slot = slot;
+        timer.previous = null;
+        timer.next = bucket[slot];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        bucket[slot] = timer;
+        pending++;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            timer.bucket[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.bucket = null;
+        timer.previous = null;
+        timer.next = null;
+        pending--;
+    }
+
+    private static long tickOf(long epochSecond) {
+        return Math.floorDiv(epochSecond, TICK_SECONDS);
+    }
+}
\ No newline at end of file
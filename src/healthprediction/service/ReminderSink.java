@@ -0,0 +1,34 @@
+package com.healthprediction.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Where {@link ReminderScheduler} delivers reminders. Called from the scheduler's own
+ * thread, one reminder at a time; a slow sink delays the reminders after it.
+ */
+@FunctionalInterface
+public interface ReminderSink {
+
+    void deliver(AppointmentReminder reminder);
+
+    /** Prints each reminder to standard output. */
+    static ReminderSink log() {
+        return reminder -> System.out.println("Reminder: " + reminder);
+    }
+
+    /** Appends each reminder as one line to {@code file}, creating it if needed. */
+    static ReminderSink appendingTo(Path file) {
+        return reminder -> {
+            try {
+                Files.writeString(file, reminder + System.lineSeparator(), StandardCharsets.UTF_8,
+                                  StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Error writing reminder to " + file + ": " + e.getMessage());
+            }
+        };
+    }
+}
\ No newline at end of file
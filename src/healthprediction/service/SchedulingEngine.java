@@ -0,0 +1,539 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+import com.healthprediction.model.Doctor;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Doctor availability in 5-minute slots. Each doctor has a working-hours bitset per day
+ * of the week and a booked bitset per calendar day (288 bits in five longs), so free
+ * time for a day is one and-not and a run of free slots is found with a few shifted ands.
+ * Bookings for the same doctor are checked and reserved under that doctor's lock,
+ * so two conflicting bookings can never both succeed.
+ */
+public class SchedulingEngine {
+    public static final int SLOT_MINUTES = 5;
+    static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    private static final int WORDS_PER_DAY = (SLOTS_PER_DAY + 63) / 64;
+    private static final int SEARCH_HORIZON_DAYS = 90;
+
+    public static final class Slot {
+        private final int doctorId;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        Slot(int doctorId, LocalDateTime start, LocalDateTime end) {
+            this.doctorId = doctorId;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getDoctorId() { return doctorId; }
+
+        public LocalDateTime getStart() { return start; }
+
+        public LocalDateTime getEnd() { return end; }
+
+        @Override
+        public String toString() {
+            return "Slot{doctorId=" + doctorId + ", start=" + start + ", end=" + end + '}';
+        }
+    }
+
+    private static final class Reservation {
+        final int appointmentId;
+        final int doctorId;
+        final long epochDay;
+        final int startSlot;
+        final int slotCount;
+
+        Reservation(int appointmentId, int doctorId, long epochDay, int startSlot, int slotCount) {
+            this.appointmentId = appointmentId;
+            this.doctorId = doctorId;
+            this.epochDay = epochDay;
+            this.startSlot = startSlot;
+            this.slotCount = slotCount;
+        }
+    }
+
+    private static final class DoctorCalendar {
+        final int doctorId;
+        final boolean bookable;
+        // Indexed by DayOfWeek.getValue() - 1; null on days off.
+        final long[][] workingHours = new long[7][];
+        final IntObjectMap<long[]> bookedByDay = new IntObjectMap<>();
+        final IntObjectMap<List<Reservation>> reservationsByDay = new IntObjectMap<>();
+
+        DoctorCalendar(Doctor doctor) {
+            this.doctorId = doctor.getDoctorId();
+            this.bookable = doctor.isActive() && doctor.isAvailable();
+            long[] hours = workingHoursMask(doctor.getWorkingHoursStart(), doctor.getWorkingHoursEnd());
+            if (doctor.getWorkingDays() != null) {
+                for (String day : doctor.getWorkingDays()) {
+                    DayOfWeek dayOfWeek = parseDayOfWeek(day);
+                    if (dayOfWeek != null) {
+                        workingHours[dayOfWeek.getValue() - 1] = hours;
+                    }
+                }
+            }
+        }
+
+        long[] workingHoursOn(long epochDay) {
+            return workingHours[dayOfWeekIndex(epochDay)];
+        }
+    }
+
+    private final Map<Integer, DoctorCalendar> calendars = new ConcurrentHashMap<>();
+    private final Map<String, List<DoctorCalendar>> bySpecialization = new ConcurrentHashMap<>();
+    private final Map<Integer, Reservation> reservations = new ConcurrentHashMap<>();
+
+    public void registerDoctors(Iterable<Doctor> doctors) {
+        for (Doctor doctor : doctors) {
+            registerDoctor(doctor);
+        }
+    }
+
+    public void registerDoctor(Doctor doctor) {
+        DoctorCalendar calendar = new DoctorCalendar(doctor);
+        DoctorCalendar previous = calendars.get(doctor.getDoctorId());
+        if (previous != null) {
+            // Carry the bookings over to the new working hours.
+            synchronized (previous) {
+                previous.reservationsByDay.forEachValue(day -> day.forEach(r -> place(calendar, r)));
+            }
+            bySpecialization.values().forEach(group -> group.remove(previous));
+        }
+        calendars.put(doctor.getDoctorId(), calendar);
+        if (doctor.getSpecialization() != null) {
+            bySpecialization.computeIfAbsent(normalize(doctor.getSpecialization()), key -> new CopyOnWriteArrayList<>())
+                    .add(calendar);
+        }
+    }
+
+    public boolean hasDoctor(int doctorId) {
+        return calendars.containsKey(doctorId);
+    }
+
+    /**
+     * Reserves the appointment's time with its doctor, replacing any reservation the
+     * appointment already held.
+     *
+     * @throws IllegalStateException if the doctor is unknown or not bookable, the time is
+     *         outside working hours (emergencies excepted) or overlaps another booking
+     */
+    public void reserve(Appointment appointment) {
+        Reservation previous = reservations.get(appointment.getAppointmentId());
+        if (previous != null) {
+            release(appointment.getAppointmentId());
+        }
+        try {
+            reserveNew(appointment);
+        } catch (IllegalStateException e) {
+            if (previous != null) {
+                restore(previous);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reserves a series of new appointments with one doctor in a single pass under the
+     * doctor's lock, checking each occurrence against existing bookings and against the
+     * earlier occurrences. Either every occurrence is reserved or none is.
+     *
+     * @throws IllegalStateException if the doctor is unknown or not bookable, or listing
+     *         every occurrence that is outside working hours or overlaps a booking
+     */
+    public void reserveAll(List<Appointment> series) {
+        if (series.isEmpty()) {
+            return;
+        }
+        int doctorId = series.get(0).getDoctorId();
+        for (Appointment appointment : series) {
+            if (appointment.getDoctorId() != doctorId) {
+                throw new IllegalArgumentException("A series must be booked with a single doctor");
+            }
+            bookableCalendar(appointment);
+        }
+        DoctorCalendar calendar = calendars.get(doctorId);
+        List<Reservation> pending = new ArrayList<>(series.size());
+        List<String> problems = new ArrayList<>();
+        synchronized (calendar) {
+            // Scratch copies of the affected days, so occurrences also see each other.
+            IntObjectMap<long[]> bookedByDay = new IntObjectMap<>();
+            for (Appointment appointment : series) {
+                Reservation reservation = toReservation(appointment);
+                long[] booked = bookedByDay.computeIfAbsent((int) reservation.epochDay, day -> {
+                    long[] existing = calendar.bookedByDay.get(day);
+                    return existing != null ? existing.clone() : new long[WORDS_PER_DAY];
+                });
+                String problem = conflict(calendar, appointment, reservation, booked);
+                if (problem != null) {
+                    problems.add(problem);
+                } else {
+                    setRange(booked, reservation.startSlot, reservation.startSlot + reservation.slotCount);
+                    pending.add(reservation);
+                }
+            }
+            if (!problems.isEmpty()) {
+                throw new IllegalStateException(problems.size() + " of " + series.size()
+                        + " occurrences are not available: " + String.join("; ", problems));
+            }
+            for (Reservation reservation : pending) {
+                place(calendar, reservation);
+            }
+        }
+        for (Reservation reservation : pending) {
+            reservations.put(reservation.appointmentId, reservation);
+        }
+    }
+
+    /**
+     * Mirrors an appointment that already exists in the database without validating it:
+     * a scheduled appointment occupies its slots, anything else holds none.
+     */
+    public void track(Appointment appointment) {
+        release(appointment.getAppointmentId());
+        if (!appointment.isScheduled() || appointment.getAppointmentDate() == null) {
+            return;
+        }
+        DoctorCalendar calendar = calendars.get(appointment.getDoctorId());
+        if (calendar != null) {
+            Reservation reservation = toReservation(appointment);
+            synchronized (calendar) {
+                place(calendar, reservation);
+            }
+            reservations.put(reservation.appointmentId, reservation);
+        }
+    }
+
+    /**
+     * Ids of the booked appointments with the same doctor whose slots overlap
+     * {@code appointment}'s, other than the appointment itself.
+     */
+    public List<Integer> overlapping(Appointment appointment) {
+        List<Integer> ids = new ArrayList<>();
+        DoctorCalendar calendar = calendars.get(appointment.getDoctorId());
+        if (calendar == null || appointment.getAppointmentDate() == null) {
+            return ids;
+        }
+        Reservation wanted = toReservation(appointment);
+        synchronized (calendar) {
+            List<Reservation> sameDay = calendar.reservationsByDay.get((int) wanted.epochDay);
+            if (sameDay != null) {
+                for (Reservation r : sameDay) {
+                    if (r.appointmentId != wanted.appointmentId
+                            && r.startSlot < wanted.startSlot + wanted.slotCount
+                            && wanted.startSlot < r.startSlot + r.slotCount) {
+                        ids.add(r.appointmentId);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    public void release(int appointmentId) {
+        Reservation reservation = reservations.remove(appointmentId);
+        if (reservation == null) {
+            return;
+        }
+        DoctorCalendar calendar = calendars.get(reservation.doctorId);
+        if (calendar == null) {
+            return;
+        }
+        synchronized (calendar) {
+            int day = (int) reservation.epochDay;
+            List<Reservation> sameDay = calendar.reservationsByDay.get(day);
+            if (sameDay == null) {
+                return;
+            }
+            sameDay.removeIf(r -> r.appointmentId == appointmentId);
+            if (sameDay.isEmpty()) {
+                calendar.reservationsByDay.remove(day);
+                calendar.bookedByDay.remove(day);
+            } else {
+                // Rebuild rather than clear, since imported rows may overlap each other.
+                long[] booked = new long[WORDS_PER_DAY];
+                for (Reservation r : sameDay) {
+                    setRange(booked, r.startSlot, r.startSlot + r.slotCount);
+                }
+                calendar.bookedByDay.put(day, booked);
+            }
+        }
+    }
+
+    /**
+     * The earliest {@code count} free, non-overlapping slots of {@code durationMinutes}
+     * with the given doctor, starting at or after {@code from}, searching up to 90 days ahead.
+     */
+    public List<Slot> findNextAvailableSlots(int doctorId, int durationMinutes, LocalDateTime from, int count) {
+        DoctorCalendar calendar = calendars.get(doctorId);
+        return calendar == null ? new ArrayList<>() : search(List.of(calendar), durationMinutes, from, count);
+    }
+
+    /**
+     * The earliest {@code count} free slots of {@code durationMinutes} with any bookable
+     * doctor of the specialization (case-insensitive), in start-time order.
+     */
+    public List<Slot> findNextAvailableSlots(String specialization, int durationMinutes, LocalDateTime from, int count) {
+        List<DoctorCalendar> group = bySpecialization.get(normalize(specialization));
+        return group == null ? new ArrayList<>() : search(group, durationMinutes, from, count);
+    }
+
+    private List<Slot> search(List<DoctorCalendar> doctors, int durationMinutes, LocalDateTime from, int count) {
+        List<Slot> found = new ArrayList<>();
+        if (count <= 0) {
+            return found;
+        }
+        int slotsNeeded = slotsFor(durationMinutes);
+        long firstDay = from.toLocalDate().toEpochDay();
+        int firstSlot = slotAtOrAfter(from.toLocalTime());
+        long[] scratch = new long[WORDS_PER_DAY];
+        // The best candidates of one day, kept sorted, as (slot << 32 | doctorId) so they
+        // order by start time then doctor.
+        long[] candidates = new long[count];
+        for (long day = firstDay; day < firstDay + SEARCH_HORIZON_DAYS; day++) {
+            int fromSlot = day == firstDay ? firstSlot : 0;
+            if (fromSlot >= SLOTS_PER_DAY) {
+                continue;
+            }
+            int dayOfWeek = dayOfWeekIndex(day);
+            int candidateCount = 0;
+            int needed = count - found.size();
+            for (DoctorCalendar calendar : doctors) {
+                long[] working = calendar.workingHours[dayOfWeek];
+                if (!calendar.bookable || working == null) {
+                    continue;
+                }
+                freeStarts(calendar, working, day, slotsNeeded, scratch);
+                for (int slot = nextSetBit(scratch, fromSlot); slot >= 0; slot = nextSetBit(scratch, slot + slotsNeeded)) {
+                    long candidate = ((long) slot << 32) | calendar.doctorId;
+                    if (candidateCount == needed && candidate >= candidates[needed - 1]) {
+                        break;
+                    }
+                    candidateCount = insertSorted(candidates, candidateCount, needed, candidate);
+                }
+            }
+            LocalDateTime dayStart = LocalDate.ofEpochDay(day).atStartOfDay();
+            for (int i = 0; i < candidateCount && found.size() < count; i++) {
+                LocalDateTime start = dayStart.plusMinutes((candidates[i] >>> 32) * SLOT_MINUTES);
+                found.add(new Slot((int) candidates[i], start, start.plusMinutes((long) slotsNeeded * SLOT_MINUTES)));
+            }
+            // Every slot on a later day starts after all of these.
+            if (found.size() >= count) {
+                break;
+            }
+        }
+        return found;
+    }
+
+    private static int insertSorted(long[] sorted, int size, int capacity, long value) {
+        int i = Math.min(size, capacity - 1);
+        while (i > 0 && sorted[i - 1] > value) {
+            sorted[i] = sorted[i - 1];
+            i--;
+        }
+        sorted[i] = value;
+        return Math.min(size + 1, capacity);
+    }
+
+    // Fills starts with the slots where a free run of slotsNeeded begins.
+    private static void freeStarts(DoctorCalendar calendar, long[] working, long epochDay, int slotsNeeded, long[] starts) {
+        synchronized (calendar) {
+            long[] booked = calendar.bookedByDay.get((int) epochDay);
+            for (int w = 0; w < WORDS_PER_DAY; w++) {
+                starts[w] = booked == null ? working[w] : working[w] & ~booked[w];
+            }
+        }
+        keepRunStarts(starts, slotsNeeded);
+    }
+
+    // Leaves bit i set only when slots i .. i+length-1 are all set. Doubling the covered
+    // run length each step needs O(log length) shifted ands.
+    static void keepRunStarts(long[] bits, int length) {
+        int covered = 1;
+        while (covered < length) {
+            int shift = Math.min(covered, length - covered);
+            int wordShift = shift >>> 6;
+            int bitShift = shift & 63;
+            // In place, ascending: word w only reads words >= w, which are not yet updated.
+            for (int w = 0; w < bits.length; w++) {
+                int src = w + wordShift;
+                long shifted = 0;
+                if (src < bits.length) {
+                    shifted = bits[src] >>> bitShift;
+                    if (bitShift != 0 && src + 1 < bits.length) {
+                        shifted |= bits[src + 1] << (64 - bitShift);
+                    }
+                }
+                bits[w] &= shifted;
+            }
+            covered += shift;
+        }
+    }
+
+    static int nextSetBit(long[] bits, int from) {
+        int w = from >>> 6;
+        if (w >= bits.length) {
+            return -1;
+        }
+        long word = bits[w] & (-1L << (from & 63));
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == bits.length) {
+                return -1;
+            }
+            word = bits[w];
+        }
+    }
+
+    private static boolean allSet(long[] bits, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if ((bits[i >>> 6] & (1L << i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void setRange(long[] bits, int from, int to) {
+        for (int i = from; i < to; i++) {
+            bits[i >>> 6] |= 1L << i;
+        }
+    }
+
+    private void reserveNew(Appointment appointment) {
+        DoctorCalendar calendar = bookableCalendar(appointment);
+        Reservation reservation = toReservation(appointment);
+        synchronized (calendar) {
+            String problem = conflict(calendar, appointment, reservation,
+                    calendar.bookedByDay.get((int) reservation.epochDay));
+            if (problem != null) {
+                throw new IllegalStateException(problem);
+            }
+            place(calendar, reservation);
+        }
+        reservations.put(reservation.appointmentId, reservation);
+    }
+
+    private DoctorCalendar bookableCalendar(Appointment appointment) {
+        if (appointment.getAppointmentDate() == null) {
+            throw new IllegalStateException("Appointment has no date and time");
+        }
+        DoctorCalendar calendar = calendars.get(appointment.getDoctorId());
+        if (calendar == null) {
+            throw new IllegalStateException("Unknown doctor: " + appointment.getDoctorId());
+        }
+        if (!calendar.bookable) {
+            throw new IllegalStateException("Doctor " + appointment.getDoctorId() + " is not taking appointments");
+        }
+        return calendar;
+    }
+
+    // Null if the reservation fits into the day's booked slots, otherwise the reason it
+    // does not. Caller holds the calendar's lock.
+    private static String conflict(DoctorCalendar calendar, Appointment appointment, Reservation reservation, long[] booked) {
+        int end = reservation.startSlot + reservation.slotCount;
+        if (!appointment.isEmergency()) {
+            long[] working = calendar.workingHoursOn(reservation.epochDay);
+            if (working == null || !allSet(working, reservation.startSlot, end)) {
+                return "Doctor " + appointment.getDoctorId() + " is not working at " + appointment.getAppointmentDate();
+            }
+        }
+        if (booked != null) {
+            int clash = nextSetBit(booked, reservation.startSlot);
+            if (clash >= 0 && clash < end) {
+                return "Doctor " + appointment.getDoctorId() + " is already booked at "
+                        + LocalDate.ofEpochDay(reservation.epochDay).atStartOfDay().plusMinutes((long) clash * SLOT_MINUTES);
+            }
+        }
+        return null;
+    }
+
+    private void restore(Reservation reservation) {
+        DoctorCalendar calendar = calendars.get(reservation.doctorId);
+        if (calendar != null) {
+            synchronized (calendar) {
+                place(calendar, reservation);
+            }
+            reservations.put(reservation.appointmentId, reservation);
+        }
+    }
+
+    // Caller holds the calendar's lock.
+    private static void place(DoctorCalendar calendar, Reservation reservation) {
+        int day = (int) reservation.epochDay;
+        setRange(calendar.bookedByDay.computeIfAbsent(day, d -> new long[WORDS_PER_DAY]),
+                reservation.startSlot, reservation.startSlot + reservation.slotCount);
+        calendar.reservationsByDay.computeIfAbsent(day, d -> new ArrayList<>(4)).add(reservation);
+    }
+
+    // Slots are aligned to the 5-minute grid: the start rounds down, the length rounds up,
+    // and a booking is clamped to the end of its day.
+    private static Reservation toReservation(Appointment appointment) {
+        LocalDateTime start = appointment.getAppointmentDate();
+        int startSlot = start.toLocalTime().toSecondOfDay() / (SLOT_MINUTES * 60);
+        int offsetMinutes = (start.toLocalTime().toSecondOfDay() % (SLOT_MINUTES * 60)) / 60;
+        int slotCount = Math.min(slotsFor(appointment.getDurationMinutes() + offsetMinutes), SLOTS_PER_DAY - startSlot);
+        return new Reservation(appointment.getAppointmentId(), appointment.getDoctorId(),
+                start.toLocalDate().toEpochDay(), startSlot, slotCount);
+    }
+
+    private static int slotsFor(int durationMinutes) {
+        return Math.max(1, (durationMinutes + SLOT_MINUTES - 1) / SLOT_MINUTES);
+    }
+
+    private static int slotAtOrAfter(LocalTime time) {
+        int seconds = time.toSecondOfDay() + (time.getNano() > 0 ? 1 : 0);
+        int slotSeconds = SLOT_MINUTES * 60;
+        return (seconds + slotSeconds - 1) / slotSeconds;
+    }
+
+    private static long[] workingHoursMask(LocalTime start, LocalTime end) {
+        long[] mask = new long[WORDS_PER_DAY];
+        if (start == null || end == null) {
+            return mask;
+        }
+        int slotSeconds = SLOT_MINUTES * 60;
+        int first = (start.toSecondOfDay() + slotSeconds - 1) / slotSeconds;
+        // An end at or before the start (e.g. 00:00) runs to midnight.
+        int last = end.isAfter(start) ? end.toSecondOfDay() / slotSeconds : SLOTS_PER_DAY;
+        setRange(mask, first, last);
+        return mask;
+    }
+
+    // 1970-01-01 was a Thursday; index 0 is Monday as in DayOfWeek.
+    private static int dayOfWeekIndex(long epochDay) {
+        return (int) Math.floorMod(epochDay + 3, 7L);
+    }
+
+    static DayOfWeek parseDayOfWeek(String day) {
+        String name = day.trim().toUpperCase(Locale.ROOT);
+        if (name.length() < 3) {
+            return null;
+        }
+        for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+            if (dayOfWeek.name().startsWith(name.substring(0, 3))) {
+                return dayOfWeek;
+            }
+        }
+        return null;
+    }
+
+    private static String normalize(String specialization) {
+        return specialization.trim().toLowerCase(Locale.ROOT);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,506 @@
+package com.healthprediction.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies ordered, versioned schema migrations. The current version is kept in the
+ * {@code schema_version} table; every migration above it runs in its own transaction,
+ * so a failed migration leaves the database at the previous version.
+ */
+public class SchemaMigrator {
+
+    static final class Migration {
+        final int version;
+        final String description;
+        final String[] statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+
+    private static final String CREATE_PATIENTS = """
+        CREATE TABLE IF NOT EXISTS patients (
+            patient_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            first_name TEXT NOT NULL,
+            last_name TEXT NOT NULL,
+            email TEXT UNIQUE,
+            phone TEXT,
+            date_of_birth TEXT,
+            gender TEXT,
+            address TEXT,
+            existing_conditions TEXT,
+            allergies TEXT,
+            medications TEXT
+        );
+        """;
+
+    private static final String CREATE_DOCTORS = """
+        CREATE TABLE IF NOT EXISTS doctors (
+            doctor_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            first_name TEXT NOT NULL,
+            last_name TEXT NOT NULL,
+            email TEXT UNIQUE,
+            phone TEXT,
+            specialization TEXT,
+            qualification TEXT,
+            experience_years INTEGER,
+            license_number TEXT UNIQUE,
+            address TEXT,
+            consultation_fee REAL,
+            working_hours_start TEXT,
+            working_hours_end TEXT,
+            working_days TEXT,
+            is_available INTEGER,
+            department TEXT,
+            biography TEXT,
+            languages TEXT,
+            image_url TEXT,
+            join_date TEXT,
+            rating REAL,
+            total_patients INTEGER,
+            is_active INTEGER
+        );
+        """;
+
+    private static final String CREATE_APPOINTMENTS = """
+        CREATE TABLE IF NOT EXISTS appointments (
+            appointment_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            patient_id INTEGER NOT NULL,
+            patient_name TEXT,
+            doctor_id INTEGER NOT NULL,
+            doctor_name TEXT,
+            doctor_specialization TEXT,
+            appointment_type TEXT,
+            appointment_datetime TEXT NOT NULL,
+            duration_minutes INTEGER,
+            status TEXT,
+            notes TEXT,
+            symptoms TEXT,
+            diagnosis TEXT,
+            prescription TEXT,
+            consultation_fee REAL,
+            is_emergency INTEGER,
+            created_date TEXT,
+            last_modified TEXT,
+            FOREIGN KEY (patient_id) REFERENCES patients(patient_id),
+            FOREIGN KEY (doctor_id) REFERENCES doctors(doctor_id)
+        );
+        """;
+
+    private static final String CREATE_HEALTH_RECORDS = """
+        CREATE TABLE IF NOT EXISTS health_records (
+            record_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            patient_id INTEGER,
+            record_date TEXT,
+            heart_rate REAL,
+            systolic_bp REAL,
+            diastolic_bp REAL,
+            blood_sugar REAL,
+            cholesterol REAL,
+            temperature REAL,
+            symptoms TEXT,
+            diagnosis TEXT,
+            medication TEXT,
+            smoking_status TEXT,
+            exercise_frequency TEXT,
+            stress_level INTEGER,
+            notes TEXT,
+            FOREIGN KEY(patient_id) REFERENCES patients(patient_id)
+        );
+        """;
+
+    private static final String CREATE_FAILED_WRITES = """
+        CREATE TABLE IF NOT EXISTS failed_writes (
+            failure_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            entity TEXT NOT NULL,
+            entity_id INTEGER,
+            operation TEXT NOT NULL,
+            payload TEXT,
+            error TEXT,
+            failed_at TEXT NOT NULL
+        );
+        """;
+
+    private static final String CREATE_CATEGORY_CODES = """
+        CREATE TABLE IF NOT EXISTS category_codes (
+            category TEXT NOT NULL,
+            code INTEGER NOT NULL,
+            label TEXT NOT NULL,
+            PRIMARY KEY (category, code),
+            UNIQUE (category, label)
+        );
+        """;
+
+    private static final String SEED_CATEGORY_CODES = """
+        INSERT OR IGNORE INTO category_codes (category, code, label) VALUES
+            ('gender', 1, 'Male'), ('gender', 2, 'Female'), ('gender', 3, 'Other'),
+            ('appointment_status', 1, 'Scheduled'), ('appointment_status', 2, 'Completed'), ('appointment_status', 3, 'Cancelled'),
+            ('smoking_status', 1, 'Never'), ('smoking_status', 2, 'Former'), ('smoking_status', 3, 'Current'),
+            ('exercise_frequency', 1, 'None'), ('exercise_frequency', 2, 'Rarely'), ('exercise_frequency', 3, 'Weekly'),
+            ('exercise_frequency', 4, 'Daily');
+        """;
+
+    // Labels already stored as free text that are not among the seeded ones get the next codes.
+    private static final String CODE_EXISTING_GENDERS = """
+        INSERT INTO category_codes (category, code, label)
+        SELECT 'gender', (SELECT MAX(code) FROM category_codes WHERE category = 'gender') + ROW_NUMBER() OVER (ORDER BY label), label
+        FROM (SELECT DISTINCT gender AS label FROM patients
+              WHERE gender IS NOT NULL AND gender NOT IN (SELECT label FROM category_codes WHERE category = 'gender'));
+        """;
+
+    private static final String CODE_EXISTING_STATUSES = """
+        INSERT INTO category_codes (category, code, label)
+        SELECT 'appointment_status', (SELECT MAX(code) FROM category_codes WHERE category = 'appointment_status') + ROW_NUMBER() OVER (ORDER BY label), label
+        FROM (SELECT DISTINCT status AS label FROM appointments
+              WHERE status IS NOT NULL AND status NOT IN (SELECT label FROM category_codes WHERE category = 'appointment_status'));
+        """;
+
+    private static final String CODE_EXISTING_SMOKING_STATUSES = """
+        INSERT INTO category_codes (category, code, label)
+        SELECT 'smoking_status', (SELECT MAX(code) FROM category_codes WHERE category = 'smoking_status') + ROW_NUMBER() OVER (ORDER BY label), label
+        FROM (SELECT DISTINCT smoking_status AS label FROM health_records
+              WHERE smoking_status IS NOT NULL AND smoking_status NOT IN (SELECT label FROM category_codes WHERE category = 'smoking_status'));
+        """;
+
+    private static final String CODE_EXISTING_EXERCISE_FREQUENCIES = """
+        INSERT INTO category_codes (category, code, label)
+        SELECT 'exercise_frequency', (SELECT MAX(code) FROM category_codes WHERE category = 'exercise_frequency') + ROW_NUMBER() OVER (ORDER BY label), label
+        FROM (SELECT DISTINCT exercise_frequency AS label FROM health_records
+              WHERE exercise_frequency IS NOT NULL AND exercise_frequency NOT IN (SELECT label FROM category_codes WHERE category = 'exercise_frequency'));
+        """;
+
+    // Table rebuilds for the compact encoding: dates become epoch days, timestamps epoch
+    // seconds (UTC-naive, matching LocalDateTime.toEpochSecond(ZoneOffset.UTC)), categories codes.
+    private static final String CREATE_PATIENTS_COMPACT = """
+        CREATE TABLE patients_compact (
+            patient_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            first_name TEXT NOT NULL,
+            last_name TEXT NOT NULL,
+            email TEXT UNIQUE,
+            phone TEXT,
+            date_of_birth INTEGER,
+            gender INTEGER,
+            address TEXT,
+            existing_conditions TEXT,
+            allergies TEXT,
+            medications TEXT
+        );
+        """;
+
+    private static final String COPY_PATIENTS_COMPACT = """
+        INSERT INTO patients_compact
+        SELECT patient_id, first_name, last_name, email, phone,
+               CAST(julianday(date_of_birth) - 2440587.5 AS INTEGER),
+               (SELECT code FROM category_codes WHERE category = 'gender' AND label = patients.gender),
+               address, existing_conditions, allergies, medications
+        FROM patients;
+        """;
+
+    private static final String CREATE_DOCTORS_COMPACT = """
+        CREATE TABLE doctors_compact (
+            doctor_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            first_name TEXT NOT NULL,
+            last_name TEXT NOT NULL,
+            email TEXT UNIQUE,
+            phone TEXT,
+            specialization TEXT,
+            qualification TEXT,
+            experience_years INTEGER,
+            license_number TEXT UNIQUE,
+            address TEXT,
+            consultation_fee REAL,
+            working_hours_start TEXT,
+            working_hours_end TEXT,
+            working_days TEXT,
+            is_available INTEGER,
+            department TEXT,
+            biography TEXT,
+            languages TEXT,
+            image_url TEXT,
+            join_date INTEGER,
+            rating REAL,
+            total_patients INTEGER,
+            is_active INTEGER
+        );
+        """;
+
+    private static final String COPY_DOCTORS_COMPACT = """
+        INSERT INTO doctors_compact
+        SELECT doctor_id, first_name, last_name, email, phone, specialization, qualification, experience_years,
+               license_number, address, consultation_fee, working_hours_start, working_hours_end, working_days,
+               is_available, department, biography, languages, image_url,
+               CAST(julianday(join_date) - 2440587.5 AS INTEGER),
+               rating, total_patients, is_active
+        FROM doctors;
+        """;
+
+    private static final String CREATE_APPOINTMENTS_COMPACT = """
+        CREATE TABLE appointments_compact (
+            appointment_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            patient_id INTEGER NOT NULL,
+            patient_name TEXT,
+            doctor_id INTEGER NOT NULL,
+            doctor_name TEXT,
+            doctor_specialization TEXT,
+            appointment_type TEXT,
+            appointment_datetime INTEGER NOT NULL,
+            duration_minutes INTEGER,
+            status INTEGER,
+            notes TEXT,
+            symptoms TEXT,
+            diagnosis TEXT,
+            prescription TEXT,
+            consultation_fee REAL,
+            is_emergency INTEGER,
+            created_date INTEGER,
+            last_modified INTEGER,
+            FOREIGN KEY (patient_id) REFERENCES patients(patient_id),
+            FOREIGN KEY (doctor_id) REFERENCES doctors(doctor_id)
+        );
+        """;
+
+    private static final String COPY_APPOINTMENTS_COMPACT = """
+        INSERT INTO appointments_compact
+        SELECT appointment_id, patient_id, patient_name, doctor_id, doctor_name, doctor_specialization, appointment_type,
+               CAST(strftime('%s', appointment_datetime) AS INTEGER),
+               duration_minutes,
+               (SELECT code FROM category_codes WHERE category = 'appointment_status' AND label = appointments.status),
+               notes, symptoms, diagnosis, prescription, consultation_fee, is_emergency,
+               CAST(strftime('%s', created_date) AS INTEGER),
+               CAST(strftime('%s', last_modified) AS INTEGER)
+        FROM appointments;
+        """;
+
+    private static final String CREATE_HEALTH_RECORDS_COMPACT = """
+        CREATE TABLE health_records_compact (
+            record_id INTEGER PRIMARY KEY AUTOINCREMENT,
+            patient_id INTEGER,
+            record_date INTEGER,
+            heart_rate REAL,
+            systolic_bp REAL,
+            diastolic_bp REAL,
+            blood_sugar REAL,
+            cholesterol REAL,
+            temperature REAL,
+            symptoms TEXT,
+            diagnosis TEXT,
+            medication TEXT,
+            smoking_status INTEGER,
+            exercise_frequency INTEGER,
+            stress_level INTEGER,
+            notes TEXT,
+            FOREIGN KEY(patient_id) REFERENCES patients(patient_id)
+        );
+        """;
+
+    private static final String COPY_HEALTH_RECORDS_COMPACT = """
+        INSERT INTO health_records_compact
+        SELECT record_id, patient_id,
+               CAST(julianday(record_date) - 2440587.5 AS INTEGER),
+               heart_rate, systolic_bp, diastolic_bp, blood_sugar, cholesterol, temperature,
+               symptoms, diagnosis, medication,
+               (SELECT code FROM category_codes WHERE category = 'smoking_status' AND label = health_records.smoking_status),
+               (SELECT code FROM category_codes WHERE category = 'exercise_frequency' AND label = health_records.exercise_frequency),
+               stress_level, notes
+        FROM health_records;
+        """;
+
+    private static final String CREATE_CHANGE_LOG = """
+        CREATE TABLE IF NOT EXISTS change_log (
+            seq INTEGER PRIMARY KEY AUTOINCREMENT,
+            table_name TEXT NOT NULL,
+            row_id INTEGER NOT NULL,
+            op TEXT NOT NULL,
+            changed_at INTEGER NOT NULL DEFAULT (CAST(strftime('%s', 'now') AS INTEGER))
+        );
+        """;
+
+    // patients_fts is an external-content FTS5 table; these triggers keep it in step with patients.
+    static final String PATIENTS_FTS_INSERT_TRIGGER = """
+        CREATE TRIGGER IF NOT EXISTS patients_fts_ai AFTER INSERT ON patients BEGIN
+            INSERT INTO patients_fts(rowid, first_name, last_name, email, phone)
+            VALUES (new.patient_id, new.first_name, new.last_name, new.email, new.phone);
+        END;
+        """;
+
+    static final String PATIENTS_FTS_DELETE_TRIGGER = """
+        CREATE TRIGGER IF NOT EXISTS patients_fts_ad AFTER DELETE ON patients BEGIN
+            INSERT INTO patients_fts(patients_fts, rowid, first_name, last_name, email, phone)
+            VALUES ('delete', old.patient_id, old.first_name, old.last_name, old.email, old.phone);
+        END;
+        """;
+
+    static final String PATIENTS_FTS_UPDATE_TRIGGER = """
+        CREATE TRIGGER IF NOT EXISTS patients_fts_au AFTER UPDATE ON patients BEGIN
+            INSERT INTO patients_fts(patients_fts, rowid, first_name, last_name, email, phone)
+            VALUES ('delete', old.patient_id, old.first_name, old.last_name, old.email, old.phone);
+            INSERT INTO patients_fts(rowid, first_name, last_name, email, phone)
+            VALUES (new.patient_id, new.first_name, new.last_name, new.email, new.phone);
+        END;
+        """;
+
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "Initial schema",
+            CREATE_PATIENTS, CREATE_DOCTORS, CREATE_APPOINTMENTS, CREATE_HEALTH_RECORDS),
+        new Migration(2, "Indexes for patient history and appointment lookups",
+            "CREATE INDEX IF NOT EXISTS idx_health_records_patient_date ON health_records(patient_id, record_date DESC, record_id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_appointments_patient_datetime ON appointments(patient_id, appointment_datetime)",
+            "CREATE INDEX IF NOT EXISTS idx_appointments_doctor_datetime ON appointments(doctor_id, appointment_datetime)",
+            "CREATE INDEX IF NOT EXISTS idx_appointments_status ON appointments(status)"),
+        new Migration(3, "Full-text index for patient search",
+            "CREATE VIRTUAL TABLE IF NOT EXISTS patients_fts USING fts5(first_name, last_name, email, phone, content='patients', content_rowid='patient_id')",
+            PATIENTS_FTS_INSERT_TRIGGER, PATIENTS_FTS_DELETE_TRIGGER, PATIENTS_FTS_UPDATE_TRIGGER,
+            "INSERT INTO patients_fts(patients_fts) VALUES ('rebuild')"),
+        new Migration(4, "Dead-letter table for failed background writes", CREATE_FAILED_WRITES),
+        new Migration(5, "Integer dates and category codes",
+            CREATE_CATEGORY_CODES, SEED_CATEGORY_CODES,
+            CODE_EXISTING_GENDERS, CODE_EXISTING_STATUSES, CODE_EXISTING_SMOKING_STATUSES, CODE_EXISTING_EXERCISE_FREQUENCIES,
+            // Dropping a table forgets its AUTOINCREMENT high-water mark; keep it so ids are never reused.
+            "CREATE TEMP TABLE sequence_backup AS SELECT name, seq FROM sqlite_sequence",
+            CREATE_PATIENTS_COMPACT, COPY_PATIENTS_COMPACT,
+            "DROP TABLE patients",
+            "ALTER TABLE patients_compact RENAME TO patients",
+            CREATE_DOCTORS_COMPACT, COPY_DOCTORS_COMPACT,
+            "DROP TABLE doctors",
+            "ALTER TABLE doctors_compact RENAME TO doctors",
+            CREATE_APPOINTMENTS_COMPACT, COPY_APPOINTMENTS_COMPACT,
+            "DROP TABLE appointments",
+            "ALTER TABLE appointments_compact RENAME TO appointments",
+            CREATE_HEALTH_RECORDS_COMPACT, COPY_HEALTH_RECORDS_COMPACT,
+            "DROP TABLE health_records",
+            "ALTER TABLE health_records_compact RENAME TO health_records",
+            "DELETE FROM sqlite_sequence WHERE name IN (SELECT name FROM sequence_backup)",
+            "INSERT INTO sqlite_sequence (name, seq) SELECT name, seq FROM sequence_backup",
+            "DROP TABLE sequence_backup",
+            // Indexes and triggers went away with the old tables.
+            "CREATE INDEX IF NOT EXISTS idx_health_records_patient_date ON health_records(patient_id, record_date DESC, record_id DESC)",
+            "CREATE INDEX IF NOT EXISTS idx_appointments_patient_datetime ON appointments(patient_id, appointment_datetime)",
+            "CREATE INDEX IF NOT EXISTS idx_appointments_doctor_datetime ON appointments(doctor_id, appointment_datetime)",
+            "CREATE INDEX IF NOT EXISTS idx_appointments_status ON appointments(status)",
+            PATIENTS_FTS_INSERT_TRIGGER, PATIENTS_FTS_DELETE_TRIGGER, PATIENTS_FTS_UPDATE_TRIGGER,
+            "INSERT INTO patients_fts(patients_fts) VALUES ('rebuild')"),
+        new Migration(6, "Change log for incremental refresh", changeLogStatements()),
+        new Migration(7, "Index for appointment date ranges",
+            "CREATE INDEX IF NOT EXISTS idx_appointments_datetime ON appointments(appointment_datetime)"),
+        new Migration(8, "Recurring appointment series",
+            "ALTER TABLE appointments ADD COLUMN series_id INTEGER",
+            "CREATE INDEX IF NOT EXISTS idx_appointments_series ON appointments(series_id, appointment_datetime)"),
+        new Migration(9, "Patient ratings of completed appointments",
+            "ALTER TABLE appointments ADD COLUMN patient_rating REAL")
+    );
+
+    // One AFTER trigger per table and operation. A migration that rebuilds one of these
+    // tables drops its triggers and must recreate them.
+    private static String[] changeLogStatements() {
+        String[][] tables = {
+            {"appointments", "appointment_id"},
+            {"patients", "patient_id"},
+            {"health_records", "record_id"}
+        };
+        List<String> statements = new ArrayList<>();
+        statements.add(CREATE_CHANGE_LOG);
+        for (String[] table : tables) {
+            String name = table[0];
+            String id = table[1];
+            statements.add("CREATE TRIGGER IF NOT EXISTS " + name + "_cl_ai AFTER INSERT ON " + name +
+                    " BEGIN INSERT INTO change_log (table_name, row_id, op) VALUES ('" + name + "', new." + id + ", 'INSERT'); END");
+            statements.add("CREATE TRIGGER IF NOT EXISTS " + name + "_cl_au AFTER UPDATE ON " + name +
+                    " BEGIN INSERT INTO change_log (table_name, row_id, op) VALUES ('" + name + "', new." + id + ", 'UPDATE'); END");
+            statements.add("CREATE TRIGGER IF NOT EXISTS " + name + "_cl_ad AFTER DELETE ON " + name +
+                    " BEGIN INSERT INTO change_log (table_name, row_id, op) VALUES ('" + name + "', old." + id + ", 'DELETE'); END");
+        }
+        return statements.toArray(new String[0]);
+    }
+
+    public int migrate(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY, description TEXT, applied_at TEXT)");
+        }
+
+        int current = getCurrentVersion(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            connection.setAutoCommit(false);
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                try (Statement stmt = connection.createStatement()) {
+                    for (String sql : migration.statements) {
+                        stmt.execute(sql);
+                    }
+                }
+                try (PreparedStatement pstmt = connection.prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                    pstmt.setInt(1, migration.version);
+                    pstmt.setString(2, migration.description);
+                    pstmt.setString(3, LocalDateTime.now().toString());
+                    pstmt.executeUpdate();
+                }
+                connection.commit();
+                current = migration.version;
+                System.out.println("Applied schema migration " + migration.version + ": " + migration.description);
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Schema migration to version " + (current + 1) + " failed: " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return current;
+    }
+
+    private int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Runs {@code EXPLAIN QUERY PLAN} for each hot query and fails if SQLite would
+     * answer any of them with a table scan or a temporary sort instead of an index search.
+     *
+     * @param hotQueries query name to parameterized SQL
+     * @throws IllegalStateException listing every query whose plan regressed
+     */
+    public static void verifyQueryPlans(Connection connection, Map<String, String> hotQueries) throws SQLException {
+        List<String> problems = checkQueryPlans(connection, hotQueries);
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("Hot queries are not using an index: " + String.join("; ", problems));
+        }
+    }
+
+    /**
+     * The plan steps of the hot queries that scan a table or sort into a temporary
+     * B-tree, as "name: detail"; empty if every query uses an index. Virtual-table
+     * lookups (FTS5 MATCH) report as SCAN but go through the full-text index.
+     */
+    public static List<String> checkQueryPlans(Connection connection, Map<String, String> hotQueries) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        for (Map.Entry<String, String> query : hotQueries.entrySet()) {
+            try (PreparedStatement pstmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + query.getValue());
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String detail = rs.getString("detail");
+                    boolean tableScan = detail.startsWith("SCAN") && !detail.contains("VIRTUAL TABLE INDEX");
+                    if (tableScan || detail.contains("TEMP B-TREE")) {
+                        problems.add(query.getKey() + ": " + detail);
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+}
\ No newline at end of file
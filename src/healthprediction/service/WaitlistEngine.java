@@ -0,0 +1,249 @@
+package com.healthprediction.service;
+
+import com.healthprediction.model.Appointment;
+import com.healthprediction.model.WaitlistEntry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Backfills cancelled appointments from a waitlist. Waiting patients are kept in priority
+ * queues, one per doctor for those who want a particular doctor and one per specialization
+ * for the rest. When {@link AppointmentService} cancels a future appointment, the best
+ * waiter in the doctor's and the specialization's queue whose dates allow it is booked
+ * into the freed slot through the service, so the usual availability checks apply.
+ *
+ * <p>Withdrawn, fulfilled and expired entries are dropped lazily when they reach the head
+ * of a queue. Finding a waiter is O(log n) unless heads do not accept the slot's time;
+ * at most {@link #MAX_PROBES} of those are passed over per queue.
+ */
+public class WaitlistEngine {
+    static final int MAX_PROBES = 64;
+    private static final int MAX_BOOKING_ATTEMPTS = 8;
+
+    private static final Comparator<WaitlistEntry> BEST_FIRST =
+            Comparator.comparing(WaitlistEntry::isEmergency).reversed()
+                      .thenComparing(Comparator.comparingInt(WaitlistEntry::getPriority).reversed())
+                      .thenComparingInt(WaitlistEntry::getWaitlistId);
+
+    private final AppointmentService appointmentService;
+    private final Map<Integer, WaitlistEntry> waiting = new HashMap<>();
+    private final Map<Integer, PriorityQueue<WaitlistEntry>> byDoctor = new HashMap<>();
+    private final Map<String, PriorityQueue<WaitlistEntry>> bySpecialization = new HashMap<>();
+    // Appointments being cancelled to make room for an emergency; their slots are not offered.
+    private final Set<Integer> preempting = new HashSet<>();
+    private int nextWaitlistId = 1;
+    private int backfilled;
+
+    public WaitlistEngine(AppointmentService appointmentService) {
+        this.appointmentService = appointmentService;
+        appointmentService.addCancellationListener(this::offer);
+    }
+
+    /**
+     * Puts a patient on the waitlist.
+     *
+     * @return the id to withdraw the entry with
+     * @throws IllegalArgumentException if the entry names neither a doctor nor a specialization
+     */
+    public synchronized int register(WaitlistEntry entry) {
+        if (entry.getDoctorId() == 0 && (entry.getSpecialization() == null || entry.getSpecialization().isBlank())) {
+            throw new IllegalArgumentException("A waitlist entry needs a doctor or a specialization");
+        }
+        WaitlistEntry stored = new WaitlistEntry(entry);
+        stored.setWaitlistId(nextWaitlistId++);
+        entry.setWaitlistId(stored.getWaitlistId());
+        waiting.put(stored.getWaitlistId(), stored);
+        queueFor(stored).add(stored);
+        return stored.getWaitlistId();
+    }
+
+    public synchronized boolean withdraw(int waitlistId) {
+        return waiting.remove(waitlistId) != null;
+    }
+
+    /** Number of patients still waiting, including expired entries not yet dropped. */
+    public synchronized int size() {
+        return waiting.size();
+    }
+
+    /** Number of freed slots booked from the waitlist so far. */
+    public synchronized int getBackfilled() {
+        return backfilled;
+    }
+
+    /**
+     * Offers the slot of a cancelled appointment to the waitlist.
+     *
+     * @return the appointment booked into the slot, or null if no waiter took it
+     */
+    public synchronized Appointment offer(Appointment freed) {
+        LocalDateTime start = freed.getAppointmentDate();
+        if (start == null || !start.isAfter(LocalDateTime.now()) || preempting.contains(freed.getAppointmentId())) {
+            return null;
+        }
+        List<WaitlistEntry> passedOver = new ArrayList<>();
+        try {
+            for (int attempt = 0; attempt < MAX_BOOKING_ATTEMPTS; attempt++) {
+                WaitlistEntry best = pollBest(freed, passedOver);
+                if (best == null) {
+                    return null;
+                }
+                Appointment booked = book(best, freed);
+                if (booked != null) {
+                    waiting.remove(best.getWaitlistId());
+                    backfilled++;
+                    System.out.println("Freed slot of appointment " + freed.getAppointmentId() + " backfilled from waitlist: " + booked);
+                    return booked;
+                }
+                passedOver.add(best);
+            }
+            return null;
+        } finally {
+            for (WaitlistEntry entry : passedOver) {
+                queueFor(entry).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Books an emergency appointment, cancelling the non-emergency bookings in its way.
+     * Patients whose appointments were cancelled go back on the waitlist for the same
+     * doctor, ahead of every other non-emergency waiter. Bookings are preempted once; if
+     * the time is still not free afterwards, the emergency is not booked.
+     *
+     * @throws IllegalArgumentException if the appointment is not an emergency
+     * @throws IllegalStateException if the time is taken by another emergency, a booking in
+     *         the way could not be cancelled, or the appointment could not be saved
+     */
+    public synchronized void bookEmergency(Appointment emergency) {
+        if (!emergency.isEmergency()) {
+            throw new IllegalArgumentException("Only emergency appointments can preempt others");
+        }
+        try {
+            appointmentService.addAppointment(emergency);
+            return;
+        } catch (IllegalStateException taken) {
+            List<Appointment> inTheWay = new ArrayList<>();
+            for (int id : appointmentService.getOverlappingAppointmentIds(emergency)) {
+                Appointment booked = appointmentService.getAppointmentById(id);
+                if (booked != null && booked.isScheduled()) {
+                    if (booked.isEmergency()) {
+                        throw taken;
+                    }
+                    inTheWay.add(booked);
+                }
+            }
+            if (inTheWay.isEmpty()) {
+                // Not a clash with a booking (e.g. an unknown doctor or a failed save).
+                throw taken;
+            }
+            for (Appointment booked : inTheWay) {
+                boolean cancelled;
+                preempting.add(booked.getAppointmentId());
+                try {
+                    cancelled = appointmentService.cancelAppointment(booked.getAppointmentId());
+                } finally {
+                    preempting.remove(booked.getAppointmentId());
+                }
+                if (!cancelled) {
+                    throw new IllegalStateException("Could not cancel appointment " + booked.getAppointmentId()
+                                                    + " to make room for the emergency", taken);
+                }
+                register(rebookingFor(booked));
+                System.out.println("Appointment " + booked.getAppointmentId() + " preempted by an emergency; patient "
+                                   + booked.getPatientName() + " put back on the waitlist");
+            }
+        }
+        appointmentService.addAppointment(emergency);
+    }
+
+    // Pops each candidate queue to its best live entry accepting the slot's time and
+    // returns the better of those; entries passed over are collected for re-queueing.
+    private WaitlistEntry pollBest(Appointment freed, List<WaitlistEntry> passedOver) {
+        WaitlistEntry forDoctor = pollFirstAccepting(byDoctor.get(freed.getDoctorId()), freed, passedOver);
+        WaitlistEntry forSpecialization = freed.getDoctorSpecialization() == null ? null
+                : pollFirstAccepting(bySpecialization.get(normalize(freed.getDoctorSpecialization())), freed, passedOver);
+        if (forDoctor == null || forSpecialization == null) {
+            return forDoctor != null ? forDoctor : forSpecialization;
+        }
+        if (BEST_FIRST.compare(forDoctor, forSpecialization) <= 0) {
+            passedOver.add(forSpecialization);
+            return forDoctor;
+        }
+        passedOver.add(forDoctor);
+        return forSpecialization;
+    }
+
+    private WaitlistEntry pollFirstAccepting(PriorityQueue<WaitlistEntry> queue, Appointment freed, List<WaitlistEntry> passedOver) {
+        if (queue == null) {
+            return null;
+        }
+        for (int probes = 0; probes < MAX_PROBES; ) {
+            WaitlistEntry entry = queue.poll();
+            if (entry == null) {
+                return null;
+            }
+            if (waiting.get(entry.getWaitlistId()) != entry) {
+                continue;
+            }
+            if (entry.isExpired()) {
+                waiting.remove(entry.getWaitlistId());
+                continue;
+            }
+            if (entry.accepts(freed.getAppointmentDate())) {
+                return entry;
+            }
+            passedOver.add(entry);
+            probes++;
+        }
+        return null;
+    }
+
+    private Appointment book(WaitlistEntry entry, Appointment freed) {
+        Appointment booking = new Appointment(entry.getPatientId(), entry.getPatientName(), freed.getDoctorName(),
+                                              entry.getAppointmentType(), freed.getAppointmentDate());
+        booking.setDoctorId(freed.getDoctorId());
+        booking.setDoctorSpecialization(freed.getDoctorSpecialization());
+        booking.setDurationMinutes(entry.getDurationMinutes() > 0 ? entry.getDurationMinutes() : freed.getDurationMinutes());
+        booking.setConsultationFee(freed.getConsultationFee());
+        booking.setEmergency(entry.isEmergency());
+        booking.setNotes("Booked from waitlist");
+        try {
+            appointmentService.addAppointment(booking);
+            return booking;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static WaitlistEntry rebookingFor(Appointment preempted) {
+        LocalDateTime start = preempted.getAppointmentDate();
+        WaitlistEntry entry = new WaitlistEntry(preempted.getPatientId(), preempted.getPatientName(),
+                                                LocalDateTime.now(), start.plusDays(7));
+        entry.setDoctorId(preempted.getDoctorId());
+        entry.setAppointmentType(preempted.getAppointmentType());
+        entry.setDurationMinutes(preempted.getDurationMinutes());
+        entry.setPriority(Integer.MAX_VALUE);
+        return entry;
+    }
+
+    private PriorityQueue<WaitlistEntry> queueFor(WaitlistEntry entry) {
+        if (entry.getDoctorId() != 0) {
+            return byDoctor.computeIfAbsent(entry.getDoctorId(), id -> new PriorityQueue<>(BEST_FIRST));
+        }
+        return bySpecialization.computeIfAbsent(normalize(entry.getSpecialization()), s -> new PriorityQueue<>(BEST_FIRST));
+    }
+
+    private static String normalize(String specialization) {
+        return specialization.trim().toLowerCase(Locale.ROOT);
+    }
+}
\ No newline at end of file
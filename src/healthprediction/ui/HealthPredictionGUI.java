@@ -4,9 +4,15 @@ import com.healthprediction.model.Patient;
 import com.healthprediction.model.Appointment;
 import com.healthprediction.model.Doctor; 
 import com.healthprediction.model.HealthRecord; 
+import com.healthprediction.ml.DiseaseCode;
+import com.healthprediction.ml.Recommendation;
+import com.healthprediction.ml.RiskTier;
 import com.healthprediction.service.DatabaseService;
 import com.healthprediction.service.MLModelService;
 import com.healthprediction.service.AppointmentService;
+import com.healthprediction.service.AppointmentWriteQueue;
+import com.healthprediction.service.DoctorLoadService;
+import com.healthprediction.service.PredictionResult;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -21,13 +27,15 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException; 
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.Vector; 
+import java.util.concurrent.ExecutionException;
 
 public class HealthPredictionGUI extends JFrame {
     private DatabaseService dbService;
     private MLModelService mlService;
     private AppointmentService aptService;
+    private DoctorLoadService doctorLoadService;
 
     
     private JTabbedPane tabbedPane;
@@ -54,7 +62,7 @@ public class HealthPredictionGUI extends JFrame {
     
     private JComboBox<String> cmbAppointmentPatient, cmbAppointmentDoctor, cmbAppointmentType;
     private JFormattedTextField txtAppointmentDate, txtAppointmentTime; 
-    private JButton btnScheduleAppointment, btnRefreshAppointments, btnCompleteAppointment, btnCancelAppointment;
+    private JButton btnScheduleAppointment, btnSuggestDoctor, btnRefreshAppointments, btnCompleteAppointment, btnCancelAppointment;
     private JTable appointmentTable;
     private DefaultTableModel appointmentTableModel;
 
@@ -62,6 +70,9 @@ public class HealthPredictionGUI extends JFrame {
         dbService = DatabaseService.getInstance();
         mlService = MLModelService.getInstance();
         aptService = new AppointmentService();
+        // Keep appointment writes off the event dispatch thread; they are group-committed in the background.
+        aptService.enableWriteBehind(AppointmentWriteQueue.Durability.ASYNC, 200);
+        doctorLoadService = new DoctorLoadService(aptService);
 
         setTitle("Smart Health Prediction & Appointment System");
         setSize(1000, 700);
@@ -350,6 +361,7 @@ public class HealthPredictionGUI extends JFrame {
             if (patient != null) {
                 
                 List<HealthRecord> healthRecords = dbService.getHealthRecordsForPatient(patientId);
+                aptService.flush();
                 List<Appointment> appointments = dbService.getAppointmentsForPatient(patientId);
 
                 StringBuilder details = new StringBuilder();
@@ -596,46 +608,86 @@ public class HealthPredictionGUI extends JFrame {
             return;
         }
 
+        int patientId;
         try {
-            int patientId = Integer.parseInt(selectedPatientItem.split(" - ")[0]);
-            Map<String, Object> results = mlService.getPredictionAndRecommendations(patientId);
+            patientId = Integer.parseInt(selectedPatientItem.split(" - ")[0]);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Error parsing patient ID for prediction.", "Input Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
 
-            taPredictionResults.setText(""); 
+        // The models may still be loading, so predict off the event thread.
+        btnPredictHealth.setEnabled(false);
+        taPredictionResults.setText("Predicting...\n");
+        new SwingWorker<PredictionResult, Void>() {
+            @Override
+            protected PredictionResult doInBackground() {
+                return mlService.getPredictionAndRecommendations(patientId);
+            }
 
-            if (results.containsKey("error")) {
-                taPredictionResults.append("Prediction Error: " + results.get("error") + "\n");
-            } else {
-                taPredictionResults.append("--- Health Prediction ---\n");
-                taPredictionResults.append("Health Risk: " + results.get("healthRisk") + "\n");
-                taPredictionResults.append("Health Score: " + results.get("healthScore") + "/100\n\n");
-
-                taPredictionResults.append("--- Predicted Diseases ---\n");
-                List<String> predictedDiseases = (List<String>) results.get("predictedDiseases");
-                if (predictedDiseases != null && !predictedDiseases.isEmpty()) {
-                    for (String disease : predictedDiseases) {
-                        taPredictionResults.append("- " + disease + "\n");
-                    }
-                } else {
-                    taPredictionResults.append("No specific disease predicted based on current data.\n");
+            @Override
+            protected void done() {
+                btnPredictHealth.setEnabled(true);
+                try {
+                    showPrediction(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    taPredictionResults.setText("");
+                    JOptionPane.showMessageDialog(HealthPredictionGUI.this, "Error during health prediction: " + e.getCause().getMessage(),
+                                                  "Error", JOptionPane.ERROR_MESSAGE);
+                    e.getCause().printStackTrace();
                 }
-                taPredictionResults.append("\n");
+            }
+        }.execute();
+    }
 
-                taPredictionResults.append("--- Recommendations ---\n");
-                List<String> recommendations = (List<String>) results.get("recommendations");
-                if (recommendations != null && !recommendations.isEmpty()) {
-                    for (String rec : recommendations) {
-                        taPredictionResults.append("- " + rec + "\n");
-                    }
-                } else {
-                    taPredictionResults.append("No specific recommendations generated.\n");
-                }
+    private void showPrediction(PredictionResult result) {
+        taPredictionResults.setText(""); 
+
+        if (!result.isSuccess()) {
+            taPredictionResults.append("Prediction Error: " + result.getError() + "\n");
+            if (!result.isRiskScored()) {
+                return;
             }
+            taPredictionResults.append("Showing the parts that could be predicted.\n\n");
+        }
+        RiskTier tier = result.getRiskTier();
+        taPredictionResults.append("--- Health Prediction ---\n");
+        taPredictionResults.append(String.format("Health Risk: %s (Score: %.2f) - %s%n",
+                                                 tier.getLabel(), result.getRiskScore(), tier.getAdvice()));
+        taPredictionResults.append(String.format("Health Score: %.2f/100%n", result.getHealthScore()));
+        if (result.hasDiagnosisProbability()) {
+            taPredictionResults.append(String.format("Likelihood of a diagnosis (trained model): %.0f%%%n",
+                                                     100 * result.getDiagnosisProbability()));
+        }
+        taPredictionResults.append("\n");
 
-        } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(this, "Error parsing patient ID for prediction.", "Input Error", JOptionPane.ERROR_MESSAGE);
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error during health prediction: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
+        if (!result.isDiseasePredicted()) {
+            return;
+        }
+        taPredictionResults.append("--- Predicted Diseases ---\n");
+        Set<DiseaseCode> predictedDiseases = result.getDiseaseCodes();
+        if (!predictedDiseases.isEmpty()) {
+            for (DiseaseCode disease : predictedDiseases) {
+                taPredictionResults.append("- " + disease.getDescription() + "\n");
+            }
+        } else {
+            taPredictionResults.append("No specific disease predicted based on current data.\n");
+        }
+        taPredictionResults.append("\n");
+
+        if (!result.isRecommended()) {
+            return;
+        }
+        taPredictionResults.append("--- Recommendations ---\n");
+        List<Recommendation> recommendations = result.getRecommendations();
+        if (!recommendations.isEmpty()) {
+            for (Recommendation rec : recommendations) {
+                taPredictionResults.append("- " + rec.getDescription() + "\n");
+            }
+        } else {
+            taPredictionResults.append("No specific recommendations generated.\n");
         }
     }
 
@@ -686,11 +738,13 @@ public class HealthPredictionGUI extends JFrame {
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
         btnScheduleAppointment = new JButton("Schedule Appointment");
+        btnSuggestDoctor = new JButton("Suggest Least Busy Doctor");
         btnRefreshAppointments = new JButton("Refresh Appointments");
         btnCompleteAppointment = new JButton("Complete Selected");
         btnCancelAppointment = new JButton("Cancel Selected");
 
         buttonPanel.add(btnScheduleAppointment);
+        buttonPanel.add(btnSuggestDoctor);
         buttonPanel.add(btnRefreshAppointments);
         buttonPanel.add(btnCompleteAppointment);
         buttonPanel.add(btnCancelAppointment);
@@ -713,7 +767,11 @@ public class HealthPredictionGUI extends JFrame {
 
         
         btnScheduleAppointment.addActionListener(e -> scheduleAppointment());
-        btnRefreshAppointments.addActionListener(e -> loadAppointmentsIntoTable());
+        btnSuggestDoctor.addActionListener(e -> suggestDoctor());
+        btnRefreshAppointments.addActionListener(e -> {
+            aptService.refreshFromDatabase();
+            loadAppointmentsIntoTable();
+        });
         btnCompleteAppointment.addActionListener(e -> completeAppointment());
         btnCancelAppointment.addActionListener(e -> cancelAppointment());
     }
@@ -790,12 +848,47 @@ public class HealthPredictionGUI extends JFrame {
             JOptionPane.showMessageDialog(this, "Invalid date/time format. Use YYYY-MM-DD for date and HH:MM for time.", "Format Error", JOptionPane.ERROR_MESSAGE);
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Error parsing patient/doctor ID.", "Data Error", JOptionPane.ERROR_MESSAGE);
+        } catch (IllegalStateException e) {
+            if (e.getCause() != null) {
+                // The time was free but the booking could not be saved.
+                JOptionPane.showMessageDialog(this, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, e.getMessage(), "Time Not Available", JOptionPane.WARNING_MESSAGE);
+            }
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Error scheduling appointment: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             e.printStackTrace();
         }
     }
 
+    // Replaces the selected doctor with the least busy one of the same specialization on the entered date.
+    private void suggestDoctor() {
+        String selectedDoctorItem = (String) cmbAppointmentDoctor.getSelectedItem();
+        String dateStr = txtAppointmentDate.getText();
+        if (selectedDoctorItem == null || selectedDoctorItem.equals("Select Doctor") || dateStr.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Select a doctor of the wanted specialization and enter a date first.", "Input Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        try {
+            String specialization = selectedDoctorItem.substring(selectedDoctorItem.indexOf('(') + 1, selectedDoctorItem.length() - 1);
+            LocalDate date = LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+            List<Doctor> recommended = doctorLoadService.recommendDoctors(specialization, date, 1);
+            if (recommended.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "No " + specialization + " doctor works on " + date + ".", "No Doctor Available", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            String prefix = recommended.get(0).getDoctorId() + " - ";
+            for (int i = 0; i < cmbAppointmentDoctor.getItemCount(); i++) {
+                if (cmbAppointmentDoctor.getItemAt(i).startsWith(prefix)) {
+                    cmbAppointmentDoctor.setSelectedIndex(i);
+                    break;
+                }
+            }
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Invalid date format. Use YYYY-MM-DD.", "Format Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     private void clearAppointmentForm() {
         cmbAppointmentPatient.setSelectedIndex(0);
         cmbAppointmentDoctor.setSelectedIndex(0);
@@ -814,7 +907,15 @@ public class HealthPredictionGUI extends JFrame {
                 JOptionPane.YES_NO_OPTION);
             
             if (confirm == JOptionPane.YES_OPTION) {
-                aptService.completeAppointment(appointmentId);
+                String[] ratings = {"No rating", "1", "2", "3", "4", "5"};
+                Object rating = JOptionPane.showInputDialog(this, "Patient's rating of the visit:", "Rate Visit",
+                        JOptionPane.QUESTION_MESSAGE, null, ratings, ratings[0]);
+                if (rating == null || rating.equals(ratings[0])) {
+                    aptService.completeAppointment(appointmentId);
+                } else if (!aptService.completeAppointment(appointmentId, Integer.parseInt((String) rating))) {
+                    JOptionPane.showMessageDialog(this, "Appointment could not be completed.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
                 JOptionPane.showMessageDialog(this, "Appointment marked as completed!");
                 loadAppointmentsIntoTable(); 
             }
@@ -833,8 +934,11 @@ public class HealthPredictionGUI extends JFrame {
                 JOptionPane.YES_NO_OPTION);
             
             if (confirm == JOptionPane.YES_OPTION) {
-                aptService.cancelAppointment(appointmentId);
-                JOptionPane.showMessageDialog(this, "Appointment cancelled successfully!");
+                if (aptService.cancelAppointment(appointmentId)) {
+                    JOptionPane.showMessageDialog(this, "Appointment cancelled successfully!");
+                } else {
+                    JOptionPane.showMessageDialog(this, "Appointment could not be cancelled.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
                 loadAppointmentsIntoTable(); 
             }
         } else {